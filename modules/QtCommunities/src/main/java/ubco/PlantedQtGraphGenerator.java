@@ -0,0 +1,167 @@
+package ubco;
+
+import org.gephi.io.generator.spi.Generator;
+import org.gephi.io.generator.spi.GeneratorUI;
+import org.gephi.io.importer.api.ContainerLoader;
+import org.gephi.io.importer.api.EdgeDirectionDefault;
+import org.gephi.utils.progress.Progress;
+import org.gephi.utils.progress.ProgressTicket;
+import org.openide.util.lookup.ServiceProvider;
+import ubco.utility.GraphTranslator;
+import ubco.utility.PlantedQtGraph;
+
+import javax.swing.*;
+
+/**
+ * Generates a planted quasi-threshold graph with noise, whose communities and a bound on its edit distance are known,
+ * to test the QtCommunitiesGenerator on. The planted community of every node is stored in the
+ * GraphTranslator.COMMUNITY column. The generator does not need the Gephi workspace, so it can also be run headless,
+ * by setting its options and calling generate on a container.
+ *
+ * @author Zach Holland
+ * @see PlantedQtGraph
+ */
+@ServiceProvider(service = Generator.class)
+public class PlantedQtGraphGenerator implements Generator {
+
+    protected ProgressTicket progress;
+    protected volatile boolean cancel = false;
+
+    // The options of the generated graph. A null seed means a random one.
+    private int vertexCount = PlantedQtGraphGeneratorPanel.VERTEX_COUNT;
+    private int communityCount = PlantedQtGraphGeneratorPanel.VERTEX_COUNT / PlantedQtGraph.COMMUNITY_SIZE;
+    private int maxDepth = PlantedQtGraph.MAX_DEPTH;
+    private double deepening = PlantedQtGraph.DEEPENING;
+    private double flipFraction = PlantedQtGraph.FLIP_FRACTION;
+    private Long seed;
+
+    // The upper bound on the edits of the last generated graph.
+    private long editBound;
+
+    @Override
+    public void generate(ContainerLoader container) {
+        Progress.start(progress);
+
+        try {
+            // The task may have been cancelled after it was scheduled, before it started.
+            if (cancel) {
+                return;
+            }
+
+            PlantedQtGraph planted = new PlantedQtGraph(vertexCount);
+            planted.setCommunityCount(communityCount);
+            planted.setMaxDepth(maxDepth);
+            planted.setDeepening(deepening);
+            planted.setFlipFraction(flipFraction);
+            if (seed != null) {
+                planted.setSeed(seed);
+            }
+            planted.setMonitor((written, total) -> {
+                Progress.progress(progress, written);
+                return !cancel;
+            });
+
+            Progress.setDisplayName(progress, "Generating the graph");
+            Progress.switchToDeterminate(progress, vertexCount);
+            container.setEdgeDefault(EdgeDirectionDefault.UNDIRECTED);
+            if (GraphTranslator.writeToContainer(container, planted)) {
+                Progress.progress(progress, "At most " + planted.getEditBound() + " edits to a quasi-threshold graph");
+            }
+            editBound = planted.getEditBound();
+        } finally {
+            Progress.finish(progress);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "Generate Planted QT Graph";
+    }
+
+    public void setVertexCount(int vertexCount) {
+        this.vertexCount = vertexCount;
+    }
+
+    public void setCommunityCount(int communityCount) {
+        this.communityCount = communityCount;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public void setDeepening(double deepening) {
+        this.deepening = deepening;
+    }
+
+    public void setFlipFraction(double flipFraction) {
+        this.flipFraction = flipFraction;
+    }
+
+    /**
+     * Sets the seed of the generator, to make the graph reproducible.
+     *
+     * @param seed The seed, or null for a random one.
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns an upper bound on the number of edits the last generated graph needs to become quasi-threshold.
+     *
+     * @return The number of flipped edges.
+     */
+    public long getEditBound() {
+        return editBound;
+    }
+
+    @Override
+    public GeneratorUI getUI() {
+        return new GeneratorUI() {
+            private PlantedQtGraphGeneratorPanel panel;
+            private PlantedQtGraphGenerator plantedGenerator;
+
+            @Override
+            public JPanel getPanel() {
+                if (panel == null) {
+                    panel = new PlantedQtGraphGeneratorPanel();
+                }
+                return panel;
+            }
+
+            @Override
+            public void setup(Generator generator) {
+                plantedGenerator = (PlantedQtGraphGenerator) generator;
+                if (panel == null) {
+                    panel = new PlantedQtGraphGeneratorPanel();
+                }
+            }
+
+            @Override
+            public void unsetup() {
+                plantedGenerator.setVertexCount(panel.getVertexCount());
+                plantedGenerator.setCommunityCount(panel.getCommunityCount());
+                plantedGenerator.setMaxDepth(panel.getMaxDepth());
+                plantedGenerator.setDeepening(panel.getDeepening());
+                plantedGenerator.setFlipFraction(panel.getFlipFraction());
+                plantedGenerator.setSeed(panel.getSeed());
+                panel = null;
+            }
+        };
+    }
+
+    @Override
+    public boolean cancel() {
+        cancel = true;
+        return true;
+    }
+
+    @Override
+    public void setProgressTicket(ProgressTicket progressTicket) {
+        // The ticket is set when the task is scheduled, so a new run is uncancelled from here on, and a cancel that
+        // comes before generate starts is kept.
+        cancel = false;
+        this.progress = progressTicket;
+    }
+}
@@ -0,0 +1,87 @@
+package ubco;
+
+import ubco.utility.PlantedQtGraph;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * Panel that displays the options for the PlantedQtGraphGenerator.
+ *
+ * @author Zach Holland
+ */
+public class PlantedQtGraphGeneratorPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+
+    // The default number of vertices.
+    public static final int VERTEX_COUNT = 1000;
+
+    // The options of the generated graph. An empty seed means a random one.
+    private JSpinner vertexCount;
+    private JSpinner communityCount;
+    private JSpinner maxDepth;
+    private JSpinner deepening;
+    private JSpinner flipFraction;
+    private JTextField seed;
+
+    public PlantedQtGraphGeneratorPanel() {
+        vertexCount = new JSpinner(new SpinnerNumberModel(VERTEX_COUNT, 1, Integer.MAX_VALUE, 100));
+        communityCount = new JSpinner(new SpinnerNumberModel(VERTEX_COUNT / PlantedQtGraph.COMMUNITY_SIZE, 1, Integer.MAX_VALUE, 1));
+        maxDepth = new JSpinner(new SpinnerNumberModel(PlantedQtGraph.MAX_DEPTH, 1, Integer.MAX_VALUE, 1));
+        deepening = new JSpinner(new SpinnerNumberModel(PlantedQtGraph.DEEPENING, 0, 1, 0.05));
+        flipFraction = new JSpinner(new SpinnerNumberModel(PlantedQtGraph.FLIP_FRACTION, 0, 1, 0.01));
+        seed = new JTextField();
+        SeedVerifier.install(seed);
+        this.setSize(200,300);
+        this.setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
+        JPanel options = new JPanel(new GridLayout(0, 2, 5, 5));
+        options.add(new JLabel("Number of vertices"));
+        options.add(vertexCount);
+        options.add(new JLabel("Number of communities"));
+        options.add(communityCount);
+        options.add(new JLabel("Maximum depth of a community"));
+        options.add(maxDepth);
+        options.add(new JLabel("Probability to deepen a community"));
+        options.add(deepening);
+        options.add(new JLabel("Fraction of flipped edges"));
+        options.add(flipFraction);
+        options.add(new JLabel("Random seed (empty for random)"));
+        options.add(seed);
+        options.setAlignmentX(Component.LEFT_ALIGNMENT);
+        this.add(options);
+    }
+
+    public int getVertexCount() {
+        return (Integer) vertexCount.getValue();
+    }
+
+    /**
+     * Returns the number of communities entered in the panel.
+     *
+     * @return The number of communities, at most the number of vertices.
+     */
+    public int getCommunityCount() {
+        return Math.min((Integer) communityCount.getValue(), getVertexCount());
+    }
+
+    public int getMaxDepth() {
+        return (Integer) maxDepth.getValue();
+    }
+
+    public double getDeepening() {
+        return ((Number) deepening.getValue()).doubleValue();
+    }
+
+    public double getFlipFraction() {
+        return ((Number) flipFraction.getValue()).doubleValue();
+    }
+
+    /**
+     * Returns the seed entered in the panel. The field does not accept a seed that is not a whole number.
+     *
+     * @return The seed, or null if none was entered.
+     */
+    public Long getSeed() {
+        return SeedVerifier.parse(seed.getText());
+    }
+}
@@ -48,13 +48,19 @@ import org.gephi.io.generator.spi.Generator;
 import org.gephi.io.generator.spi.GeneratorUI;
 import org.gephi.io.importer.api.ContainerLoader;
 import org.gephi.io.importer.api.EdgeDirectionDefault;
+import org.gephi.utils.progress.Progress;
 import org.gephi.utils.progress.ProgressTicket;
 import org.openide.util.Lookup;
 import org.openide.util.lookup.ServiceProvider;
+import ubco.algorithm.MultiStartMonitor;
+import ubco.algorithm.MultiStartQuasiThresholdMover;
+import ubco.algorithm.ProgressMonitor;
+import ubco.algorithm.QtmMetrics;
 import ubco.algorithm.QuasiThresholdMover;
 import ubco.utility.GraphTranslator;
 
 import javax.swing.*;
+import java.util.Random;
 
 /**
  * Generates a quasi-threshold graph from the graph in the current workspace.
@@ -68,30 +74,117 @@ import javax.swing.*;
 public class QtCommunitiesGenerator implements Generator {
 
     protected ProgressTicket progress;
-    protected boolean cancel = false;
+    protected volatile boolean cancel = false;
 
     private boolean showTransitiveClosures;
 
+    // The run options. A time budget of 0 means no limit, and a null seed a random one.
+    private long timeBudget = 0;
+    private int maxIterations = QuasiThresholdMover.ITERATIONS;
+    private long editTarget = 0;
+    private Long seed;
+    private int threads = 1;
+    private int starts = 1;
+    private boolean simulatedAnnealing = false;
+
+    // The measurements of the last run, or null.
+    private QtmMetrics metrics;
+
     @Override
     public void generate(ContainerLoader container) {
         // Get the graph from the current workspace.
         GraphController graphController = Lookup.getDefault().lookup(GraphController.class);
         GraphModel graphModel = graphController.getGraphModel();
         Graph graph = graphModel.getGraph();
+        Progress.start(progress);
+
+        try {
+            // The task may have been cancelled after it was scheduled, before it started.
+            if (cancel) {
+                return;
+            }
+
+            // Copy the graph, so that the workspace is only locked while it is read.
+            Progress.setDisplayName(progress, "Reading the graph");
+            QuasiThresholdMover<Integer> qtm;
+            Object[] nodeIds;
+            graph.readLock();
+            try {
+                qtm = GraphTranslator.gephiToQuasiThresholdMover(graph);
+                nodeIds = GraphTranslator.getNodeIds(graph);
+            } finally {
+                graph.readUnlock();
+            }
+
+            // Edit the graph using the qtm algorithm.
+            Progress.setDisplayName(progress, "Initializing the tree");
+            qtm.setTimeBudget(timeBudget);
+            qtm.setMaxIterations(maxIterations);
+            qtm.setEditTarget(editTarget);
+            if (seed != null) {
+                qtm.setSeed(seed);
+            }
+            qtm.setThreads(threads);
+            if (starts > 1) {
+                // Run the starts, as many at a time as there are threads, and keep the best one.
+                MultiStartQuasiThresholdMover<Integer> multiStart = new MultiStartQuasiThresholdMover<>(
+                        qtm, starts, seed != null ? seed : new Random().nextLong());
+                multiStart.setParallelism(threads);
+                multiStart.setMonitor(new MultiStartMonitor() {
+                    @Override
+                    public void startFinished(int finished, int total, long edits) {
+                        Progress.progress(progress, finished);
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return cancel;
+                    }
+                });
+                Progress.setDisplayName(progress, "Running " + starts + " starts");
+                Progress.switchToDeterminate(progress, starts);
+                qtm = multiStart.optimize(simulatedAnnealing);
+                Progress.progress(progress, "Best start: " + qtm.getEditCount() + " edits");
+            } else {
+                qtm.setProgressMonitor(new ProgressMonitor() {
+                    @Override
+                    public void iterationStarted(int iteration, int vertexCount) {
+                        Progress.setDisplayName(progress, "Iteration " + (iteration + 1));
+                        Progress.switchToDeterminate(progress, vertexCount);
+                    }
 
-        graph.readLock();
+                    @Override
+                    public void verticesExamined(int examined) {
+                        Progress.progress(progress, examined);
+                    }
 
-        // Edit the graph using the qtm algorithm.
-        QuasiThresholdMover<Integer> qtm = new QuasiThresholdMover<>(GraphTranslator.gephiToJung(graph), Integer.MAX_VALUE);
-        edu.uci.ics.jung.graph.Graph<Integer, String> resultGraph = qtm.doQuasiThresholdMover(showTransitiveClosures, false);
+                    @Override
+                    public void iterationFinished(int iteration, long edits) {
+                        Progress.progress(progress, "Iteration " + (iteration + 1) + ": " + edits + " edits");
+                    }
 
-        // Edges are directed if only showing the tree skeleton.
-        container.setEdgeDefault(showTransitiveClosures ? EdgeDirectionDefault.UNDIRECTED : EdgeDirectionDefault.DIRECTED);
+                    @Override
+                    public boolean isCancelled() {
+                        return cancel;
+                    }
+                });
+                qtm.optimize(simulatedAnnealing);
+            }
+            if (cancel) {
+                return;
+            }
 
-        // Build the graph in Gephi.
-        GraphTranslator.jungToGephi(container, graph, resultGraph, showTransitiveClosures);
+            // Edges are directed if only showing the tree skeleton.
+            container.setEdgeDefault(showTransitiveClosures ? EdgeDirectionDefault.UNDIRECTED : EdgeDirectionDefault.DIRECTED);
 
-        graph.readUnlock();
+            // Build the graph in Gephi.
+            Progress.setDisplayName(progress, "Building the graph");
+            Progress.switchToIndeterminate(progress);
+            GraphTranslator.writeToContainer(container, qtm, showTransitiveClosures, nodeIds);
+            metrics = qtm.getMetrics();
+        } finally {
+            Progress.finish(progress);
+        }
     }
 
     @Override
@@ -103,6 +196,64 @@ public class QtCommunitiesGenerator implements Generator {
         this.showTransitiveClosures = showTransitiveClosures;
     }
 
+    /**
+     * Sets the time budget of the algorithm. Once it is spent, the best tree found so far is used.
+     *
+     * @param timeBudget The time budget in milliseconds, or 0 for no limit.
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Sets the edit target of the algorithm. The run stops as soon as the tree needs no more edits than the target.
+     *
+     * @param editTarget The number of edits that is good enough, or 0 to only stop early on a qt graph.
+     */
+    public void setEditTarget(long editTarget) {
+        this.editTarget = editTarget;
+    }
+
+    /**
+     * Sets the seed of the algorithm, to make its result reproducible.
+     *
+     * @param seed The seed, or null for a random one.
+     */
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Sets the number of independent starts of the algorithm, each with its own seed. The start with the fewest
+     * edits is kept.
+     *
+     * @param starts The number of starts, at least 1.
+     */
+    public void setStarts(int starts) {
+        this.starts = starts;
+    }
+
+    public void setSimulatedAnnealing(boolean simulatedAnnealing) {
+        this.simulatedAnnealing = simulatedAnnealing;
+    }
+
+    /**
+     * Returns the measurements of the phases of the last run, to find out where its time went.
+     *
+     * @return The metrics of the last run, or null if no run has completed.
+     */
+    public QtmMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public GeneratorUI getUI() {
         // Creates the panel that gives the choice between the two graph display options.
@@ -130,6 +281,13 @@ public class QtCommunitiesGenerator implements Generator {
             public void unsetup() {
                 ButtonModel buttonModel = panel.getButtonGroup().getSelection();
                 qtGenerator.setShowTransitiveClosures(QtCommunitiesGeneratorPanel.SHOW_COMPLETE_GRAPH.equals(buttonModel.getActionCommand()));
+                qtGenerator.setTimeBudget(panel.getTimeBudget() * 1000L);
+                qtGenerator.setMaxIterations(panel.getMaxIterations());
+                qtGenerator.setEditTarget(panel.getEditTarget());
+                qtGenerator.setSeed(panel.getSeed());
+                qtGenerator.setThreads(panel.getThreads());
+                qtGenerator.setStarts(panel.getStarts());
+                qtGenerator.setSimulatedAnnealing(panel.isSimulatedAnnealing());
                 panel = null;
             }
         };
@@ -143,6 +301,9 @@ public class QtCommunitiesGenerator implements Generator {
 
     @Override
     public void setProgressTicket(ProgressTicket progressTicket) {
+        // The ticket is set when the task is scheduled, so a new run is uncancelled from here on, and a cancel that
+        // comes before generate starts is kept.
+        cancel = false;
         this.progress = progressTicket;
     }
 }
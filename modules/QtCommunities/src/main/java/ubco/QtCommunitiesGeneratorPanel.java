@@ -1,5 +1,7 @@
 package ubco;
 
+import ubco.algorithm.QuasiThresholdMover;
+
 import javax.swing.*;
 import java.awt.*;
 
@@ -14,6 +16,15 @@ public class QtCommunitiesGeneratorPanel extends JPanel {
 
     private ButtonGroup buttonGroup;
 
+    // The run options. A time budget of 0 means no limit, an edit target of 0 none, and an empty seed a random one.
+    private JSpinner timeBudget;
+    private JSpinner maxIterations;
+    private JSpinner editTarget;
+    private JTextField seed;
+    private JSpinner threads;
+    private JSpinner starts;
+    private JCheckBox simulatedAnnealing;
+
     public QtCommunitiesGeneratorPanel() {
         JRadioButton editedGraph = new JRadioButton(SHOW_COMPLETE_GRAPH);
         editedGraph.setActionCommand(SHOW_COMPLETE_GRAPH);
@@ -27,9 +38,67 @@ public class QtCommunitiesGeneratorPanel extends JPanel {
         this.add(editedGraph);
         this.add(tree);
         editedGraph.setSelected(true);
+
+        timeBudget = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 10));
+        maxIterations = new JSpinner(new SpinnerNumberModel(QuasiThresholdMover.ITERATIONS, 0, Integer.MAX_VALUE, 1));
+        editTarget = new JSpinner(new SpinnerNumberModel(0, 0, Integer.MAX_VALUE, 100));
+        seed = new JTextField();
+        SeedVerifier.install(seed);
+        threads = new JSpinner(new SpinnerNumberModel(1, 1, Runtime.getRuntime().availableProcessors(), 1));
+        starts = new JSpinner(new SpinnerNumberModel(1, 1, Integer.MAX_VALUE, 1));
+        simulatedAnnealing = new JCheckBox("Simulated annealing");
+        JPanel options = new JPanel(new GridLayout(0, 2, 5, 5));
+        options.add(new JLabel("Time budget in seconds (0 for none)"));
+        options.add(timeBudget);
+        options.add(new JLabel("Maximum number of iterations"));
+        options.add(maxIterations);
+        options.add(new JLabel("Stop at this number of edits (0 for none)"));
+        options.add(editTarget);
+        options.add(new JLabel("Random seed (empty for random)"));
+        options.add(seed);
+        options.add(new JLabel("Threads"));
+        options.add(threads);
+        options.add(new JLabel("Independent starts"));
+        options.add(starts);
+        options.add(simulatedAnnealing);
+        options.setAlignmentX(Component.LEFT_ALIGNMENT);
+        this.add(options);
     }
 
     public ButtonGroup getButtonGroup() {
         return buttonGroup;
     }
+
+    public int getTimeBudget() {
+        return (Integer) timeBudget.getValue();
+    }
+
+    public int getMaxIterations() {
+        return (Integer) maxIterations.getValue();
+    }
+
+    public int getEditTarget() {
+        return (Integer) editTarget.getValue();
+    }
+
+    /**
+     * Returns the seed entered in the panel. The field does not accept a seed that is not a whole number.
+     *
+     * @return The seed, or null if none was entered.
+     */
+    public Long getSeed() {
+        return SeedVerifier.parse(seed.getText());
+    }
+
+    public int getThreads() {
+        return (Integer) threads.getValue();
+    }
+
+    public int getStarts() {
+        return (Integer) starts.getValue();
+    }
+
+    public boolean isSimulatedAnnealing() {
+        return simulatedAnnealing.isSelected();
+    }
 }
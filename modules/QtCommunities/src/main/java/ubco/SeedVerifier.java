@@ -0,0 +1,98 @@
+package ubco;
+
+import javax.swing.*;
+import javax.swing.border.Border;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+
+/**
+ * Checks the seed entered in a text field of an options panel. The field may be empty, for a random seed, or hold a
+ * whole number. Any other text is marked in red with an explanation as it is typed, and the field keeps the focus
+ * until it is corrected, so that the panel cannot be confirmed with a seed that would be ignored.
+ *
+ * @author Zach Holland
+ */
+public class SeedVerifier extends InputVerifier implements DocumentListener {
+    // The explanation shown on a field that holds an invalid seed.
+    public static final String INVALID_SEED = "The seed must be a whole number, or empty for a random one.";
+
+    // The border of a field that holds an invalid seed.
+    private static final Border ERROR_BORDER = BorderFactory.createLineBorder(Color.RED);
+
+    // The field that holds the seed, and its border and tooltip when the seed is valid.
+    private final JTextField _field;
+    private final Border _border;
+    private final String _toolTip;
+
+    private SeedVerifier(JTextField field) {
+        _field = field;
+        _border = field.getBorder();
+        _toolTip = field.getToolTipText();
+    }
+
+    /**
+     * Checks the seed of the given field: sets a verifier as its input verifier, and has it follow the text as it is
+     * typed.
+     *
+     * @param field The field that holds the seed.
+     */
+    public static void install(JTextField field) {
+        SeedVerifier verifier = new SeedVerifier(field);
+        field.setInputVerifier(verifier);
+        field.getDocument().addDocumentListener(verifier);
+    }
+
+    @Override
+    public boolean verify(JComponent input) {
+        return isValid(((JTextField) input).getText());
+    }
+
+    @Override
+    public void insertUpdate(DocumentEvent e) {
+        showValidity();
+    }
+
+    @Override
+    public void removeUpdate(DocumentEvent e) {
+        showValidity();
+    }
+
+    @Override
+    public void changedUpdate(DocumentEvent e) {
+        showValidity();
+    }
+
+    /**
+     * Marks the field in red, with an explanation, while it holds an invalid seed.
+     */
+    private void showValidity() {
+        boolean valid = isValid(_field.getText());
+        _field.setBorder(valid ? _border : ERROR_BORDER);
+        _field.setToolTipText(valid ? _toolTip : INVALID_SEED);
+    }
+
+    /**
+     * Checks whether a text is a valid seed.
+     *
+     * @param text The text entered.
+     * @return true if the text is empty or a whole number, and false otherwise.
+     */
+    public static boolean isValid(String text) {
+        return text.trim().isEmpty() || parse(text) != null;
+    }
+
+    /**
+     * Parses a seed.
+     *
+     * @param text The text entered.
+     * @return The seed, or null if the text is empty or not a whole number.
+     */
+    public static Long parse(String text) {
+        try {
+            return Long.valueOf(text.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
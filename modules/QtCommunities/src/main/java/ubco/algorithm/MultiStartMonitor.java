@@ -0,0 +1,28 @@
+package ubco.algorithm;
+
+/**
+ * Follows the progress of a MultiStartQuasiThresholdMover run, and can ask it to stop. The starts run on the threads
+ * of a pool, so the methods are called from those threads: startFinished by one thread at a time, and isCancelled
+ * by every running start, possibly at the same time.
+ *
+ * @author Zach Holland
+ * @see MultiStartQuasiThresholdMover#setMonitor(MultiStartMonitor)
+ */
+public interface MultiStartMonitor {
+    /**
+     * Called when a start is done.
+     *
+     * @param finished The number of starts that are done, including this one.
+     * @param total    The number of starts of the run.
+     * @param edits    The number of edits implied by the tree of this start.
+     */
+    void startFinished(int finished, int total, long edits);
+
+    /**
+     * Checks whether the run should stop. Every running start checks it between batches of moves, so the run stops
+     * soon after, with the best tree found by any start.
+     *
+     * @return true to stop the run, and false to go on.
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,207 @@
+package ubco.algorithm;
+
+import edu.uci.ics.jung.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs several independent instances of the QuasiThresholdMover algorithm on the same graph and keeps the tree
+ * with the fewest edits. Every start has its own seed and its own tree, while the graph and its triangle counts are
+ * shared between all starts. The starts are run in parallel on a fork-join pool.
+ * <p>
+ * A start is only created when it begins, and is dropped as soon as it finishes unless it is the best so far, so no
+ * more than one tree per running start, plus the best one, is kept at any time.
+ *
+ * @param <V> The id type of the vertex object.
+ * @author Zach Holland
+ */
+public class MultiStartQuasiThresholdMover<V extends Comparable<V>> {
+
+    // The instance whose graph is shared by all starts, and whose options they run with.
+    private QuasiThresholdMover<V> _template;
+
+    // The number of independent starts.
+    private int _starts;
+
+    // The seed from which the seed of every start is derived.
+    private long _seed;
+
+    // The number of starts run at the same time.
+    private int _parallelism;
+
+    // Follows the progress of the run, or null.
+    private MultiStartMonitor _monitor;
+
+    // The number of edits of every start, in start order.
+    private long[] _editCounts;
+
+    // The start with the fewest edits so far, its index, and the number of starts that have finished.
+    private QuasiThresholdMover<V> _best;
+    private int _bestStart;
+    private int _finished;
+
+    /**
+     * Creates a new multi-start run over the graph of the given instance.
+     *
+     * @param template The instance whose graph to use. Every start runs with its options, except that a start runs
+     *                 on a single thread when several starts run at the same time. Its own tree is left untouched.
+     * @param starts   The number of independent starts.
+     * @param seed     The seed from which the seed of every start is derived.
+     */
+    public MultiStartQuasiThresholdMover(QuasiThresholdMover<V> template, int starts, long seed) {
+        if (starts < 1) {
+            throw new IllegalArgumentException("The number of starts must be at least 1.");
+        }
+        _template = template;
+        _starts = starts;
+        _seed = seed;
+        _parallelism = Math.min(starts, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Sets the number of starts that are run at the same time.
+     *
+     * @param parallelism The number of starts run at the same time, at least 1.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be at least 1.");
+        }
+        _parallelism = parallelism;
+    }
+
+    /**
+     * Sets the monitor that follows the starts as they finish, and that can stop the run early. A cancelled run
+     * stops every running start, and keeps the best tree found by any of them.
+     *
+     * @param monitor The monitor, or null for none.
+     */
+    public void setMonitor(MultiStartMonitor monitor) {
+        _monitor = monitor;
+    }
+
+    /**
+     * Performs all the starts and returns the edited qt graph of the start with the fewest edits.
+     *
+     * @param showTransitiveClosures true returns the actual edited graph,
+     *                               and false returns only the skeleton tree structure.
+     * @param simulatedAnnealing     true allows the algorithm to make a sub-optimal choice, and false only makes
+     *                               locally optimal choices.
+     * @return A quasi-threshold graph, or a tree which implies a qt graph.
+     * @see QuasiThresholdMover#doQuasiThresholdMover(boolean, boolean)
+     */
+    public Graph<V, String> doQuasiThresholdMover(boolean showTransitiveClosures, boolean simulatedAnnealing) {
+        return optimize(simulatedAnnealing).buildQtGraph(showTransitiveClosures);
+    }
+
+    /**
+     * Performs all the starts and returns the start with the fewest edits. Its tree can then be turned into a graph
+     * with buildQtGraph or writeQtGraph, and its metrics tell how the winning start went.
+     *
+     * @param simulatedAnnealing true allows the algorithm to make a sub-optimal choice, and false only makes
+     *                           locally optimal choices.
+     * @return The start with the fewest edits, the first one on ties.
+     */
+    public QuasiThresholdMover<V> optimize(boolean simulatedAnnealing) {
+        // Count the triangles once, before the starts share them.
+        _template.getTriangles();
+
+        // The seeds are drawn up front, so that they do not depend on the order the starts finish in.
+        Random random = new Random(_seed);
+        long[] seeds = new long[_starts];
+        for (int i = 0; i < _starts; i++) {
+            seeds[i] = random.nextLong();
+        }
+        _editCounts = new long[_starts];
+        _best = null;
+        _finished = 0;
+
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        try {
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(_starts);
+            for (int i = 0; i < _starts; i++) {
+                final int start = i;
+                tasks.add(pool.submit(() -> runStart(start, seeds[start], simulatedAnnealing)));
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return _best;
+    }
+
+    /**
+     * Runs a single start and keeps it if it is the best so far.
+     *
+     * @param start              The index of the start.
+     * @param seed               The seed of the start.
+     * @param simulatedAnnealing Whether the start uses simulated annealing.
+     */
+    private void runStart(int start, long seed, boolean simulatedAnnealing) {
+        QuasiThresholdMover<V> qtm = new QuasiThresholdMover<>(_template);
+        qtm.setSeed(seed);
+        if (_parallelism > 1) {
+            qtm.setThreads(1);
+        }
+        if (_monitor != null) {
+            qtm.setProgressMonitor(new CancelMonitor(_monitor));
+        }
+        qtm.optimize(simulatedAnnealing);
+
+        synchronized (this) {
+            _editCounts[start] = qtm.getEditCount();
+            if (_best == null || qtm.getEditCount() < _best.getEditCount()
+                    || (qtm.getEditCount() == _best.getEditCount() && start < _bestStart)) {
+                _best = qtm;
+                _bestStart = start;
+            }
+            _finished++;
+            if (_monitor != null) {
+                _monitor.startFinished(_finished, _starts, qtm.getEditCount());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of edits found by every start of the last run.
+     *
+     * @return The number of edits of every start, in start order, or null if no run has been done.
+     */
+    public long[] getEditCounts() {
+        return _editCounts;
+    }
+
+    /**
+     * Forwards the cancellation of the whole run to a single start, without reporting the progress of the start.
+     */
+    private static class CancelMonitor implements ProgressMonitor {
+        private final MultiStartMonitor _monitor;
+
+        CancelMonitor(MultiStartMonitor monitor) {
+            _monitor = monitor;
+        }
+
+        @Override
+        public void iterationStarted(int iteration, int vertexCount) {
+        }
+
+        @Override
+        public void verticesExamined(int examined) {
+        }
+
+        @Override
+        public void iterationFinished(int iteration, long edits) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return _monitor.isCancelled();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ubco.algorithm;
+
+/**
+ * Follows the progress of a QuasiThresholdMover run, and can ask it to stop. The methods are called from the thread
+ * that runs the algorithm.
+ *
+ * @author Zach Holland
+ * @see QuasiThresholdMover#setProgressMonitor(ProgressMonitor)
+ */
+public interface ProgressMonitor {
+    /**
+     * Called when an iteration starts.
+     *
+     * @param iteration   The iteration, starting from 0.
+     * @param vertexCount The number of vertices the iteration examines.
+     */
+    void iterationStarted(int iteration, int vertexCount);
+
+    /**
+     * Called as the vertices of an iteration are examined.
+     *
+     * @param examined The number of vertices of the current iteration examined so far.
+     */
+    void verticesExamined(int examined);
+
+    /**
+     * Called when an iteration is done.
+     *
+     * @param iteration The iteration, starting from 0.
+     * @param edits     The number of edits implied by the tree after the iteration.
+     */
+    void iterationFinished(int iteration, long edits);
+
+    /**
+     * Checks whether the run should stop. It is checked between batches of moves, so a run stops soon after, with
+     * a valid tree.
+     *
+     * @return true to stop the run, and false to go on.
+     */
+    boolean isCancelled();
+}
@@ -0,0 +1,27 @@
+package ubco.algorithm;
+
+/**
+ * Receives the quasi-threshold graph implied by the tree of a QuasiThresholdMover, one vertex or edge at a time.
+ * The graph is streamed rather than built, so a consumer only keeps what it needs of it.
+ *
+ * @param <V> The id type of the vertices.
+ * @author Zach Holland
+ * @see QuasiThresholdMover#writeQtGraph(boolean, QtGraphConsumer)
+ */
+public interface QtGraphConsumer<V> {
+    /**
+     * Receives a vertex. A vertex is always received before any of its edges.
+     *
+     * @param v  The index of the vertex.
+     * @param id The id of the vertex.
+     */
+    void addVertex(int v, V id);
+
+    /**
+     * Receives an edge from an ancestor of a vertex in the tree to the vertex.
+     *
+     * @param ancestor The index of the ancestor.
+     * @param v        The index of the vertex.
+     */
+    void addEdge(int ancestor, int v);
+}
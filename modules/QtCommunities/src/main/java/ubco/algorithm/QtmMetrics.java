@@ -0,0 +1,134 @@
+package ubco.algorithm;
+
+/**
+ * The measurements of a QuasiThresholdMover: the time and memory each phase took, and counters of the work done by
+ * the iterations. The metrics of an instance are updated as its phases run, and can be copied to keep a snapshot.
+ * <p>
+ * Every phase is measured once when it ends, so the metrics cost a few reads of the clock per run, and can stay on.
+ *
+ * @author Zach Holland
+ * @see QuasiThresholdMover#getMetrics()
+ */
+public class QtmMetrics {
+
+    /**
+     * The phases of a run, in the order they run in.
+     */
+    public enum Phase {
+        READING("Reading the graph"),
+        TRIANGLE_COUNTING("Counting triangles"),
+        INITIALIZATION("Initializing the tree"),
+        OPTIMIZATION("Moving vertices"),
+        RESULT_BUILDING("Building the result");
+
+        private final String _label;
+
+        Phase(String label) {
+            _label = label;
+        }
+
+        public String getLabel() {
+            return _label;
+        }
+    }
+
+    // The time spent in each phase, in nanoseconds, indexed by phase ordinal.
+    private final long[] _phaseNanos = new long[Phase.values().length];
+
+    // The bytes allocated by each phase, indexed by phase ordinal, or -1 if the JVM cannot measure them.
+    private final long[] _allocatedBytes = new long[Phase.values().length];
+
+    // The number of iterations run, of vertices examined by them, and of vertices that changed position.
+    private int _iterations;
+    private long _verticesExamined;
+    private long _moves;
+
+    public QtmMetrics() {
+    }
+
+    /**
+     * Copies the metrics measured so far.
+     *
+     * @param other The metrics to copy.
+     */
+    public QtmMetrics(QtmMetrics other) {
+        synchronized (other) {
+            System.arraycopy(other._phaseNanos, 0, _phaseNanos, 0, _phaseNanos.length);
+            System.arraycopy(other._allocatedBytes, 0, _allocatedBytes, 0, _allocatedBytes.length);
+            _iterations = other._iterations;
+            _verticesExamined = other._verticesExamined;
+            _moves = other._moves;
+        }
+    }
+
+    /**
+     * Adds a run of a phase. A phase that runs more than once, like building the result in two forms, adds up.
+     *
+     * @param phase          The phase.
+     * @param nanos          The time the phase took, in nanoseconds.
+     * @param allocatedBytes The bytes the phase allocated, or -1 if they are unknown.
+     */
+    public synchronized void addPhase(Phase phase, long nanos, long allocatedBytes) {
+        _phaseNanos[phase.ordinal()] += nanos;
+        if (allocatedBytes < 0 || _allocatedBytes[phase.ordinal()] < 0) {
+            _allocatedBytes[phase.ordinal()] = -1;
+        } else {
+            _allocatedBytes[phase.ordinal()] += allocatedBytes;
+        }
+    }
+
+    /**
+     * Adds an iteration of the optimization.
+     *
+     * @param verticesExamined The number of vertices the iteration examined.
+     * @param moves            The number of vertices that changed position.
+     */
+    public synchronized void addIteration(int verticesExamined, int moves) {
+        _iterations++;
+        _verticesExamined += verticesExamined;
+        _moves += moves;
+    }
+
+    public synchronized long getPhaseNanos(Phase phase) {
+        return _phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * Returns the bytes allocated by a phase on the thread that ran it. The work of helper threads, like the ones
+     * that count triangles or find moves in parallel, is not included.
+     *
+     * @param phase The phase.
+     * @return The allocated bytes, or -1 if the JVM cannot measure them.
+     */
+    public synchronized long getAllocatedBytes(Phase phase) {
+        return _allocatedBytes[phase.ordinal()];
+    }
+
+    public synchronized int getIterations() {
+        return _iterations;
+    }
+
+    public synchronized long getVerticesExamined() {
+        return _verticesExamined;
+    }
+
+    public synchronized long getMoves() {
+        return _moves;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            sb.append(phase.getLabel()).append(": ").append(_phaseNanos[phase.ordinal()] / 1000000).append(" ms");
+            if (_allocatedBytes[phase.ordinal()] >= 0) {
+                sb.append(", ").append(_allocatedBytes[phase.ordinal()] / 1024).append(" KiB allocated");
+            }
+            sb.append('\n');
+        }
+        sb.append("Iterations: ").append(_iterations)
+          .append(", vertices examined: ").append(_verticesExamined)
+          .append(", moves: ").append(_moves);
+        return sb.toString();
+    }
+}
@@ -4,24 +4,26 @@ import edu.uci.ics.jung.graph.Graph;
 import edu.uci.ics.jung.graph.SparseGraph;
 import edu.uci.ics.jung.graph.util.EdgeType;
 import edu.uci.ics.jung.graph.util.Pair;
+import ubco.structure.CsrGraph;
 import ubco.structure.Edge;
+import ubco.structure.Forest;
 import ubco.structure.Vertex;
+import ubco.structure.VertexIds;
+import ubco.utility.FlightRecorderEvents;
+import ubco.utility.IntArrayList;
+import ubco.utility.PhaseTimer;
 import ubco.utility.PseudoC4P4Counter;
 import ubco.utility.TriangleCounter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
-import java.util.PriorityQueue;
-import java.util.Queue;
 import java.util.Random;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 /**
@@ -33,250 +35,865 @@ import java.util.stream.Collectors;
  */
 public class QuasiThresholdMover<V extends Comparable<V>> {
 
-    // The total number of iterations to run the algorithm.
+    // The default maximum number of iterations to run the algorithm.
     public static final int ITERATIONS = 5;
 
-    // If simulated annealing is enabled, this determines the number of iterations that have a probability of
-    // making a sub-optimal choice.
-    public static final int ANNEALING_ITERATIONS = 0;
+    // The default convergence threshold. The algorithm stops after an iteration that saves no edits.
+    public static final double CONVERGENCE_THRESHOLD = 0;
 
-    // The initial probability of making a sub-optimal choice if simulated annealing is enabled.
-    public static final double INITIAL_SUB_OPTIMAL_CHOICE_PROBABILITY = 0.1;
+    // The number of vertices whose moves each thread evaluates per round when running in parallel.
+    public static final int BATCH_SIZE_PER_THREAD = 32;
 
-    // The working graph
-    private Graph<Vertex<V>, Edge<String>> _graph;
+    // The default temperature of the first iteration if simulated annealing is enabled, in edits.
+    public static final double INITIAL_TEMPERATURE = 1;
 
-    // The original input graph
-    private Graph<Vertex<V>, Edge<String>> _originalGraph;
+    // The fraction of the maximum number of iterations that anneals when no cooling rate is set. The temperature
+    // cools from the initial one to MIN_TEMPERATURE over these iterations, and the remaining ones are greedy, so
+    // that the run ends with locally optimal moves and can converge. With ITERATIONS, 3 iterations anneal and 2 are
+    // greedy.
+    public static final double ANNEALING_FRACTION = 0.6;
 
-    // The universal root vertex
-    private Vertex<V> _root;
+    // The temperature below which simulated annealing stops, and only locally optimal moves are made.
+    public static final double MIN_TEMPERATURE = 0.1;
+
+    // The number of vertices examined between two progress reports.
+    public static final int PROGRESS_INTERVAL = 1024;
+
+    // The working graph. The universal root is not stored in it; it is implicitly adjacent to every vertex.
+    private CsrGraph _graph;
+
+    // The number of triangles of each edge of the working graph, indexed by edge id.
+    private int[] _triangles;
+
+    // The ids of the vertices of the working graph.
+    private VertexIds<V> _ids;
+
+    // The id of the universal root vertex.
+    private V _rootId;
+
+    // The tree, over the vertices of the working graph and the universal root.
+    private Forest _forest;
+
+    // The universal root vertex, which comes after the vertices of the working graph.
+    private int _root;
 
     // Random generator.
     private Random _random;
 
-    // For comparing the depth of two vertices. (Decreasing depth)
-    private Comparator<Vertex<V>> _depthComparator = (v1, v2) -> v2.getDepth() - v1.getDepth(); // I don't think there will be an overflow.
+    // The number of threads used to evaluate moves.
+    private int _threads = 1;
+
+    // The number of vertices whose moves are found against the same tree, or 0 for BATCH_SIZE_PER_THREAD for each
+    // thread when running in parallel, and 1 otherwise.
+    private int _batchSize = 0;
+
+    // The maximum number of iterations to run the algorithm.
+    private int _maxIterations = ITERATIONS;
+
+    // The fraction of the edits an iteration has to save for the algorithm to continue.
+    private double _convergenceThreshold = CONVERGENCE_THRESHOLD;
+
+    // The temperature of the first iteration if simulated annealing is enabled.
+    private double _initialTemperature = INITIAL_TEMPERATURE;
+
+    // The factor by which the temperature is multiplied after every iteration, or 0 to derive it from the maximum
+    // number of iterations.
+    private double _coolingRate = 0;
+
+    // The wall-clock time a run may take, in milliseconds, or 0 for no limit.
+    private long _timeBudget = 0;
 
-    // Stores the close children of a given vertex.
-    private Map<Vertex<V>, Set<Vertex<V>>> _closeChildren;
+    // The algorithm stops as soon as the tree needs no more than this number of edits.
+    private long _editTarget = 0;
 
-    // Stores the best parent of the sub-tree rooted at the key.
-    // The best parent in the entire tree will be at the root.
-    private Map<Vertex<V>, Vertex<V>> _bestParentMap;
+    // The number of edits implied by the current tree.
+    private long _edits;
+
+    // The parent of each vertex in the best tree found so far, and its number of edits.
+    private int[] _bestParents;
+    private long _bestEdits;
+
+    // The number of edits after the initialization and after each iteration.
+    private List<Long> _iterationEdits = new ArrayList<>();
+
+    // Whether iterations after the first only examine the vertices near the moves of the previous iteration.
+    private boolean _worklist = false;
+
+    // Marks the vertices to examine in the next iteration, indexed by vertex index. Only used with the worklist.
+    private boolean[] _dirty;
+
+    // The vertices to examine in the next iteration. Only used with the worklist.
+    private IntArrayList _dirtyVertices;
+
+    // Whether a vertex moves to a position that saves no edits over its old one. Such sideways moves let the run
+    // cross plateaus, and are only turned off to confirm that the run converged.
+    private boolean _sidewaysMoves = true;
+
+    // Marks the vertices changed by the moves applied so far in the current batch, indexed by vertex index.
+    private boolean[] _changed;
+
+    // The vertices changed by the moves applied so far in the current batch.
+    private IntArrayList _changedVertices;
+
+    // Follows the progress of the run, or null.
+    private ProgressMonitor _monitor;
+
+    // The measurements of the phases run so far.
+    private QtmMetrics _metrics = new QtmMetrics();
 
     /**
-     * Creates a new instance of a QuasiThresholdMover from the given input graph and root vertex.
+     * Creates a new instance of a QuasiThresholdMover from the given compressed graph and root vertex.
+     *
+     * @param graph The graph to run through the algorithm.
+     * @param ids   The id of each vertex of the graph, indexed by vertex index.
+     * @param root  The id to use for the universal root.
+     */
+    public QuasiThresholdMover(CsrGraph graph, List<V> ids, V root) {
+        this(graph, new VertexIds<>(ids), root);
+    }
+
+    /**
+     * Creates a new instance of a QuasiThresholdMover from the given compressed graph and root vertex.
+     *
+     * @param graph The graph to run through the algorithm.
+     * @param ids   The ids of the vertices of the graph.
+     * @param root  The id to use for the universal root.
+     */
+    public QuasiThresholdMover(CsrGraph graph, VertexIds<V> ids, V root) {
+        _random = new Random();
+        _graph = graph;
+        _ids = ids;
+        _rootId = root;
+        _forest = new Forest(graph.getVertexCount());
+        _root = _forest.getRoot();
+    }
+
+    /**
+     * Creates a new instance of a QuasiThresholdMover that works on the same graph as the given one, but has a tree
+     * of its own. The graph, its vertex ids and its triangle counts are shared with the given instance rather than
+     * copied. The run options are copied, except the seed and the progress monitor.
+     *
+     * @param other The instance whose graph to use.
+     */
+    public QuasiThresholdMover(QuasiThresholdMover<V> other) {
+        this(other._graph, other._ids, other._rootId);
+        _triangles = other.getTriangles();
+        _threads = other._threads;
+        _batchSize = other._batchSize;
+        _maxIterations = other._maxIterations;
+        _convergenceThreshold = other._convergenceThreshold;
+        _initialTemperature = other._initialTemperature;
+        _coolingRate = other._coolingRate;
+        _timeBudget = other._timeBudget;
+        _editTarget = other._editTarget;
+        _worklist = other._worklist;
+    }
+
+    /**
+     * Creates a new instance of a QuasiThresholdMover from the given input graph and root vertex. The graph is
+     * copied into the working representation, so it can be discarded afterwards.
      *
      * @param inputGraph The graph to run through the algorithm.
      * @param root       The vertex to use as the universal root.
      */
     public QuasiThresholdMover(Graph<Vertex<V>, Edge<String>> inputGraph, V root) {
-        _random = new Random();
+        this(new ArrayList<>(inputGraph.getVertices()), inputGraph, root);
+    }
 
-        // Save the input graph for comparison later.
-        _originalGraph = inputGraph;
+    /**
+     * Creates a new instance of a QuasiThresholdMover from the given input graph, indexing its vertices in the
+     * given order.
+     *
+     * @param vertices   The vertices of the input graph.
+     * @param inputGraph The graph to run through the algorithm.
+     * @param root       The vertex to use as the universal root.
+     */
+    private QuasiThresholdMover(List<Vertex<V>> vertices, Graph<Vertex<V>, Edge<String>> inputGraph, V root) {
+        this(toCsrGraph(vertices, inputGraph), vertices.stream().map(Vertex::getId).collect(Collectors.toList()), root);
+    }
 
-        // Create the universal vertex
-        _root = new Vertex<>(root, inputGraph.getVertexCount(), null, 0);
+    /**
+     * Compresses a JUNG graph into the working graph representation.
+     *
+     * @param vertices   The vertices of the input graph, in index order.
+     * @param inputGraph The graph to compress.
+     * @param <V>        The id type of the vertices.
+     * @return The compressed graph.
+     */
+    private static <V extends Comparable<V>> CsrGraph toCsrGraph(List<Vertex<V>> vertices,
+                                                                 Graph<Vertex<V>, Edge<String>> inputGraph) {
+        Map<Vertex<V>, Integer> indices = new HashMap<>(vertices.size());
+        for (int i = 0; i < vertices.size(); i++) {
+            indices.put(vertices.get(i), i);
+        }
 
-        // Create a copy of the input graph for the algorithm to work on.
-        _graph = new SparseGraph<>();
-        inputGraph.getVertices().stream().forEach(v -> _graph.addVertex(v));
-        inputGraph.getEdges().stream().forEach(e -> {
+        int edgeCount = inputGraph.getEdgeCount();
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        int i = 0;
+        for (Edge<String> e : inputGraph.getEdges()) {
             Pair<Vertex<V>> endpoints = inputGraph.getEndpoints(e);
-            _graph.addEdge(new Edge<>(endpoints.getFirst().getId() + "-" + endpoints.getSecond()), endpoints.getFirst(), endpoints.getSecond());
-        });
+            sources[i] = indices.get(endpoints.getFirst());
+            targets[i] = indices.get(endpoints.getSecond());
+            i++;
+        }
+        return CsrGraph.fromEdgeList(vertices.size(), sources, targets, i);
     }
 
     /**
-     * Perform the initialization step. Makes the first 'best-guess' at the optimal edited qt graph.
+     * Sets the seed of the random generator, which decides the order in which the vertices are examined.
+     *
+     * @param seed The seed.
      */
-    private void initialize() {
-        long startTime = System.nanoTime();
+    public void setSeed(long seed) {
+        _random = new Random(seed);
+    }
 
-        // Sort the vertices by descending degree.
-        PriorityQueue<Vertex<V>> vertexQueue = new PriorityQueue<>((v1, v2) -> v2.getDegree() - v1.getDegree());
+    /**
+     * Sets the maximum number of iterations to run the algorithm.
+     *
+     * @param maxIterations The maximum number of iterations, at least 0.
+     */
+    public void setMaxIterations(int maxIterations) {
+        if (maxIterations < 0) {
+            throw new IllegalArgumentException("The maximum number of iterations cannot be negative.");
+        }
+        _maxIterations = maxIterations;
+    }
 
-        // Add the universal root to every vertex and add it to the queue
-        _root.setParent(_root);
-        _graph.addVertex(_root);
-        _graph.getVertices()
-                .stream()
-                .filter(v -> !v.equals(_root))
-                .forEach(v -> {
-                    v.setParent(_root);
-                    v.setDepth(1);
-                    _root.addChild(v);
-                    _graph.addEdge(new Edge<>(_root.getId() + "-" + v.getId()), _root, v);
-                    vertexQueue.add(v);
-                });
-        vertexQueue.add(_root);
+    /**
+     * Sets the convergence threshold. The algorithm stops once an iteration saves no more than this fraction of the
+     * edits it started with, and the next one, which examines every vertex and only makes moves that save edits,
+     * does not save more either. With a threshold of 0, the run then ends on a tree where no single move saves edits.
+     *
+     * @param convergenceThreshold The fraction of edits, at least 0.
+     */
+    public void setConvergenceThreshold(double convergenceThreshold) {
+        if (convergenceThreshold < 0) {
+            throw new IllegalArgumentException("The convergence threshold cannot be negative.");
+        }
+        _convergenceThreshold = convergenceThreshold;
+    }
+
+    /**
+     * Sets the temperature of the first iteration of simulated annealing. A move to a random parent that needs
+     * delta more edits than the best move is made with probability exp(-delta / temperature).
+     *
+     * @param initialTemperature The temperature, in edits, at least 0.
+     */
+    public void setInitialTemperature(double initialTemperature) {
+        if (initialTemperature < 0) {
+            throw new IllegalArgumentException("The initial temperature cannot be negative.");
+        }
+        _initialTemperature = initialTemperature;
+    }
+
+    /**
+     * Sets the cooling rate of simulated annealing. Once the temperature falls below MIN_TEMPERATURE, only locally
+     * optimal moves are made, and the run can converge. By default, the cooling rate is derived from the maximum
+     * number of iterations, so that the first ANNEALING_FRACTION of them anneal and the others are greedy. A cooling
+     * rate that is set keeps annealing until the temperature falls below MIN_TEMPERATURE, however many iterations
+     * that takes, so a slow one may leave no greedy iteration.
+     *
+     * @param coolingRate The factor by which the temperature is multiplied after every iteration, above 0 and
+     *                    below 1, or 0 to derive it from the maximum number of iterations.
+     */
+    public void setCoolingRate(double coolingRate) {
+        if (coolingRate < 0 || coolingRate >= 1) {
+            throw new IllegalArgumentException("The cooling rate must be at least 0 and below 1.");
+        }
+        _coolingRate = coolingRate;
+    }
+
+    /**
+     * Sets the time budget of a run. Once the budget is spent, the run stops after the batch of moves it is in, and
+     * keeps the best tree found so far. The initialization is always completed, however long it takes.
+     *
+     * @param timeBudget The wall-clock time a run may take, in milliseconds, at least 0. 0 means no limit.
+     */
+    public void setTimeBudget(long timeBudget) {
+        if (timeBudget < 0) {
+            throw new IllegalArgumentException("The time budget cannot be negative.");
+        }
+        _timeBudget = timeBudget;
+    }
+
+    /**
+     * Sets the edit target of a run. The run stops as soon as the tree needs no more than this number of edits.
+     * With more than one thread, the number of edits is only exact at the end of an iteration, so the target is
+     * checked there.
+     *
+     * @param editTarget The number of edits that is good enough, at least 0. 0 means the run only stops early on
+     *                   a tree that needs no edits at all.
+     */
+    public void setEditTarget(long editTarget) {
+        if (editTarget < 0) {
+            throw new IllegalArgumentException("The edit target cannot be negative.");
+        }
+        _editTarget = editTarget;
+    }
 
-        // Count all the triangles that each edge participates in.
-        TriangleCounter.countAllTriangles(_graph);
+    /**
+     * Enables or disables the worklist. With the worklist, every iteration after the first only examines the
+     * vertices that might have a better position since the previous iteration: the neighbors of the vertices that
+     * moved, and the tree vertices around their old and new positions. Once the worklist runs dry or saves too few
+     * edits, an iteration examines every vertex, and the run only converges if that one saves too few edits as well.
+     *
+     * @param worklist true to examine only the vertices near earlier moves, and false to examine every vertex in
+     *                 every iteration.
+     */
+    public void setWorklist(boolean worklist) {
+        _worklist = worklist;
+    }
+
+    /**
+     * Sets the number of threads used to find moves. With more than one thread, the moves of a batch of vertices are
+     * found in parallel against the same tree, and then applied one after the other, skipping moves that conflict
+     * with an earlier one of the batch.
+     *
+     * @param threads The number of threads, at least 1.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1.");
+        }
+        _threads = threads;
+    }
+
+    /**
+     * Sets the number of vertices whose moves are found against the same tree. Lets the tests compare the moves
+     * found in parallel with the same batches found on one thread.
+     *
+     * @param batchSize The number of vertices of a batch, at least 1, or 0 for the default.
+     */
+    void setBatchSize(int batchSize) {
+        if (batchSize < 0) {
+            throw new IllegalArgumentException("The batch size must be at least 0.");
+        }
+        _batchSize = batchSize;
+    }
+
+    /**
+     * Sets the monitor that follows the progress of the algorithm, and that can stop it early. A stopped run
+     * leaves a valid tree, with the moves applied until then.
+     *
+     * @param monitor The monitor, or null for none.
+     */
+    public void setProgressMonitor(ProgressMonitor monitor) {
+        _monitor = monitor;
+    }
+
+    /**
+     * Perform the initialization step. Makes the first 'best-guess' at the optimal edited qt graph, and computes
+     * the subtree sizes of the resulting tree.
+     */
+    void initialize() {
+        // Count all the triangles that each edge participates in. They are a phase of their own.
+        int[] triangles = getTriangles();
+
+        PhaseTimer timer = PhaseTimer.start(QtmMetrics.Phase.INITIALIZATION);
+        int n = _graph.getVertexCount();
+        int root = _root;
+
+        // The tree is built in these arrays, indexed by vertex index, and only copied into the forest at the end.
+        int[] parents = new int[n + 1];
+        int[] depths = new int[n + 1];
+
+        // The id of the edge between each vertex and its parent, which the scores are looked up by.
+        int[] parentEdges = new int[n + 1];
+
+        // Add the universal root to every vertex.
+        parents[root] = root;
+        for (int v = 0; v < n; v++) {
+            parents[v] = root;
+            depths[v] = 1;
+            parentEdges[v] = _graph.getEdgeCount() + v;
+        }
+
+        // Sort the vertices by descending degree with a counting sort. The root itself is not processed: all its
+        // neighbors already have it as their parent, so it would not change anything.
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            maxDegree = Math.max(maxDegree, _graph.degree(v));
+        }
+        int[] degreeStart = new int[maxDegree + 2];
+        for (int v = 0; v < n; v++) {
+            degreeStart[maxDegree - _graph.degree(v) + 1]++;
+        }
+        for (int d = 0; d <= maxDegree; d++) {
+            degreeStart[d + 1] += degreeStart[d];
+        }
+        int[] order = new int[n];
+        for (int v = 0; v < n; v++) {
+            order[degreeStart[maxDegree - _graph.degree(v)]++] = v;
+        }
 
         // Track all the nodes that have been processed.
-        HashSet<Vertex<V>> processed = new HashSet<>(vertexQueue.size());
+        boolean[] processed = new boolean[n];
 
-        PseudoC4P4Counter<V> pc = new PseudoC4P4Counter<>(_graph);
-        while (!vertexQueue.isEmpty()) {
-            Vertex<V> current = vertexQueue.poll();
-            processed.add(current);
+        // The number of times each parent appears among the neighbors of the current vertex, and the parents with a
+        // non-zero count, so that only those have to be cleared again.
+        int[] parentOccurrences = new int[n + 1];
+        int[] touched = new int[n + 1];
 
-            // Get all the neighbors of the current vertex that are not processed
+        PseudoC4P4Counter pc = new PseudoC4P4Counter(_graph, triangles);
+        for (int c : order) {
+            processed[c] = true;
+
+            // Count the parents of all the neighbors of the current vertex that are not processed
             // AND (that share the same parent as the current vertex
             //        OR (that have a PseudoC4P4 score between the current and the neighbor that is <= to the score between the neighbor and its parent
             //              AND that have a depth <= to the number of triangles that the edge between the current and neighbor are involved in + 1)
-            TreeSet<Vertex<V>> neighbors = _graph.getNeighbors(current)
-                                                   .stream()
-                                                   .filter(v -> !processed.contains(v) && (Objects.equals(current.getParent(), v.getParent())
-                                                                                                   || (pc.score(current, v) <= pc.score(v, v.getParent())
-                                                                                                               && v.getDepth() <= _graph.findEdge(v, current).getNumTriangles() + 1)))
-                                                   .collect(Collectors.toCollection(TreeSet::new));
-
-            // Get the most frequent parent that appears in the set of neighbors.
-            Map<Vertex<V>, Integer> parentOccurrences = new HashMap<>();
-            neighbors.stream().map(Vertex::getParent).forEach(p -> {
-                Integer count = parentOccurrences.get(p);
-                if (count == null) {
-                    parentOccurrences.put(p, 1);
-                } else {
-                    parentOccurrences.put(p, count + 1);
+            // The triangle counts are one higher than in the working graph, because of the universal root.
+            int touchedCount = 0;
+            for (int p = _graph.adjacencyStart(c); p < _graph.adjacencyEnd(c); p++) {
+                int v = _graph.getNeighbor(p);
+                int e = _graph.getEdgeId(p);
+                if (!processed[v] && (parents[c] == parents[v]
+                                              || (pc.score(e) <= pc.score(parentEdges[v]) && depths[v] <= triangles[e] + 2))) {
+                    if (parentOccurrences[parents[v]]++ == 0) {
+                        touched[touchedCount++] = parents[v];
+                    }
                 }
-            });
-            Optional<Map.Entry<Vertex<V>, Integer>> optionalEntry = parentOccurrences.entrySet().stream().max((e1, e2) -> e1.getValue().compareTo(e2.getValue()));
-            Vertex<V> tempParent = optionalEntry.isPresent() ? optionalEntry.get().getKey() : null;
+            }
+
+            // Get the most frequent parent that appears in the set of neighbors, the first one found on ties.
+            int tempParent = -1;
+            for (int i = 0; i < touchedCount; i++) {
+                int parent = touched[i];
+                if (tempParent < 0 || parentOccurrences[parent] > parentOccurrences[tempParent]) {
+                    tempParent = parent;
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                parentOccurrences[touched[i]] = 0;
+            }
 
             // If the most frequent parent is not equal to the current parent, change the parent to the most frequent parent.
-            if (tempParent != null && !tempParent.equals(current.getParent())) {
-                changeParent(current, tempParent);
-                current.setDepth(0);
-                pc.setToInfinity(current, tempParent);
+            if (tempParent >= 0 && tempParent != parents[c]) {
+                parents[c] = tempParent;
+                depths[c] = 0;
+                parentEdges[c] = pc.edgeId(c, tempParent);
+                pc.setToInfinity(parentEdges[c]);
             }
 
             // For each of the neighbors that have not been processed and meet the 'criteria', set their parent
             // to be the current vertex and increase their depth.
-            _graph.getNeighbors(current)
-                    .stream()
-                    .filter(v -> !processed.contains(v))
-                    .filter(v -> Objects.equals(current.getParent(), v.getParent())
-                                         || (pc.score(current, v) < pc.score(v, v.getParent())
-                                                     && v.getDepth() < _graph.findEdge(current, v).getNumTriangles() + 1))
-                    .forEach(v -> {
-                        changeParent(v, current);
-                        v.setDepth(v.getDepth() + 1);
-                    });
+            for (int p = _graph.adjacencyStart(c); p < _graph.adjacencyEnd(c); p++) {
+                int v = _graph.getNeighbor(p);
+                int e = _graph.getEdgeId(p);
+                if (!processed[v] && (parents[c] == parents[v]
+                                              || (pc.score(e) < pc.score(parentEdges[v]) && depths[v] < triangles[e] + 2))) {
+                    parents[v] = c;
+                    parentEdges[v] = e;
+                    depths[v]++;
+                }
+            }
+        }
+
+        // Build the tree from the parent array.
+        _forest.clear();
+        for (int v = 0; v < n; v++) {
+            _forest.setParent(v, parents[v]);
         }
-        long endTime = System.nanoTime();
-//        System.out.println((double)(endTime - startTime) / 1000000d);
+        _forest.computeSubtreeSizes();
+        timer.stop(_metrics, n, _graph.getEdgeCount());
     }
 
     /**
-     * Changes the parent vertex of the given child vertex to the new parent.
+     * Moves a single vertex to its best position in the current tree, as an iteration does, and updates the number
+     * of edits by the change the core algorithm found. The tree and the number of edits must be up to date, as after
+     * optimize. Lets the tests check single moves of the core algorithm.
      *
-     * @param child     The vertex to change the parent of.
-     * @param newParent The new parent vertex.
+     * @param vm The vertex to move.
+     * @return The change in the number of edits found by the core algorithm.
      */
-    private void changeParent(Vertex<V> child, Vertex<V> newParent) {
-        Vertex<V> oldParent = child.getParent();
-        if (oldParent != null) {
-            oldParent.removeChild(child);
+    int moveVertex(int vm) {
+        if (_changed == null) {
+            _changed = new boolean[_root + 1];
+            _changedVertices = new IntArrayList();
         }
-        child.setParent(newParent);
-        if (newParent != null) {
-            newParent.addChild(child);
+        Move move = new MoveEvaluator().core(vm, Forest.NONE, 0);
+        applyMove(move);
+        for (int j = 0; j < _changedVertices.size(); j++) {
+            _changed[_changedVertices.get(j)] = false;
+        }
+        _changedVertices.clear();
+        return move._editDelta;
+    }
+
+    /**
+     * Sets the number of triangles of each edge of the working graph, counted beforehand, for example when the
+     * graph was loaded from a snapshot. The triangles are then not counted again.
+     *
+     * @param triangles The number of triangles of each edge, indexed by edge id.
+     */
+    public synchronized void setTriangles(int[] triangles) {
+        if (triangles.length != _graph.getEdgeCount()) {
+            throw new IllegalArgumentException("There must be a triangle count for every edge.");
         }
+        _triangles = triangles;
     }
 
     /**
-     * Finds a new locally better position for the given vertex in the qt graph, and finds the children it should adopt.
+     * Returns the number of triangles of each edge of the working graph, counting them on first use.
      *
-     * @param vm The vertex to find a new locally better position.
+     * @return The number of triangles of each edge, indexed by edge id.
+     */
+    synchronized int[] getTriangles() {
+        if (_triangles == null) {
+            _triangles = TriangleCounter.countAllTriangles(_graph, _threads, _metrics);
+        }
+        return _triangles;
+    }
+
+    /**
+     * A move of a single vertex in the tree, as found by the core algorithm. Vertices are given by their index.
+     */
+    private class Move {
+        // The vertex to move.
+        private int _vertex;
+
+        // The parent of the vertex when the move was found.
+        private int _oldParent;
+
+        // The new parent of the vertex.
+        private int _newParent;
+
+        // The children of the new parent that the vertex adopts.
+        private IntArrayList _childrenToAdopt = new IntArrayList();
+
+        // The vertices, other than the root, that were read while finding the move.
+        private IntArrayList _visited = new IntArrayList();
+
+        // The change in the number of edits caused by the move.
+        private int _editDelta;
+    }
+
+    /**
+     * Runs the core algorithm against the current tree without modifying it. The vertex to move is treated as if it
+     * were removed from the tree, with its children attached to its parent. An evaluator keeps the state of one
+     * core run, so every thread needs its own.
+     * <p>
+     * All the state is kept in arrays indexed by vertex index, which are allocated once. The entries of the vertices
+     * visited by a call are reset at its end, so the calls allocate nothing once the buffers have grown.
      */
-    private void core(Vertex<V> vm) {
-        // Queue of all vertices in T ordered by decreasing tree depth.
-        Queue<Vertex<V>> queue = new PriorityQueue<>(_graph.getVertexCount(), _depthComparator);
-        queue.addAll(_graph.getVertices());
+    private class MoveEvaluator {
+        // The child closeness of each visited vertex.
+        private int[] _childClose = new int[_root + 1];
+
+        // The score_max of each visited vertex.
+        private int[] _scoreMax = new int[_root + 1];
+
+        // Stores the best parent of the sub-tree rooted at each visited vertex.
+        // The best parent in the entire tree will be at the root.
+        private int[] _bestParent = new int[_root + 1];
+
+        // The first and last child that reported to each vertex, or -1, and the next child that reported to the same
+        // parent as each child, or -1.
+        private int[] _firstReported = new int[_root + 1];
+        private int[] _lastReported = new int[_root + 1];
+        private int[] _nextReported = new int[_root + 1];
+
+        // The depth in the tree of each vertex whose depth has been looked up, or -1.
+        private int[] _depths = new int[_root + 1];
+
+        // Marks the queued vertices.
+        private boolean[] _queued = new boolean[_root + 1];
+
+        // Marks the neighbors of the vertex to move.
+        private boolean[] _neighbor = new boolean[_root + 1];
+
+        // Marks the ancestors of the vertex to move, other than the root. Their subtrees lose that vertex.
+        private boolean[] _ancestor = new boolean[_root + 1];
+
+        // The queued vertices, in the order they were queued. Their entries are reset at the end of a call.
+        private IntArrayList _touched = new IntArrayList();
+
+        // The queued vertices, grouped by their depth in the tree. The buckets are kept between calls.
+        private List<IntArrayList> _depthBuckets = new ArrayList<>();
+
+        // The vertices on the way up from a vertex to the first one of known depth.
+        private IntArrayList _path = new IntArrayList();
+
+        // The moves found since the last call to clearMoves. They are reused by later calls.
+        private List<Move> _moves = new ArrayList<>();
+        private int _moveCount;
+
+        MoveEvaluator() {
+            Arrays.fill(_firstReported, -1);
+            Arrays.fill(_depths, -1);
+        }
+
+        /**
+         * Makes the moves returned by this evaluator available for reuse. They must no longer be needed.
+         */
+        private void clearMoves() {
+            _moveCount = 0;
+        }
+
+        /**
+         * Finds a new locally better position for the given vertex in the qt graph, and finds the children it should
+         * adopt.
+         * <p>
+         * Only the neighbors of vm and their ancestors are visited. Every visited vertex reports itself to its
+         * parent, and a vertex none of whose descendants is a neighbor of vm is accounted for through its subtree
+         * size alone, so a call costs O(deg(vm) * depth) rather than O(n log n).
+         *
+         * @param vm           The vertex to find a new locally better position.
+         * @param candidate    A random parent to move vm to instead of the best one, or Forest.NONE.
+         * @param maxWorsening The number of edits by which the move to the candidate may be worse than the best
+         *                     move and still be made.
+         * @return The move of vm. It is only valid until clearMoves is called.
+         */
+        private Move core(int vm, int candidate, double maxWorsening) {
+            int root = _root;
+            int oldParent = _forest.getParent(vm);
+            for (int a = oldParent; a != root; a = _forest.getParent(a)) {
+                _ancestor[a] = true;
+            }
+            for (int p = _graph.adjacencyStart(vm); p < _graph.adjacencyEnd(vm); p++) {
+                _neighbor[_graph.getNeighbor(p)] = true;
+            }
 
+            // Queue the neighbors of vm and their ancestors in depth buckets, which are walked from the deepest one
+            // up. Ancestors are added when the first of their children reports to them. Every vertex reports to a
+            // parent of smaller depth, so a bucket is complete by the time it is walked.
+            int maxDepth = 0;
+            for (int p = _graph.adjacencyStart(vm); p < _graph.adjacencyEnd(vm); p++) {
+                int v = _graph.getNeighbor(p);
+                enqueue(v);
+                maxDepth = Math.max(maxDepth, depth(v));
+            }
+            enqueue(root);
+
+            for (int depth = maxDepth; depth >= 0; depth--) {
+                IntArrayList bucket = _depthBuckets.get(depth);
+                for (int i = 0; i < bucket.size(); i++) {
+                    int v = bucket.get(i);
+
+                    // The children that did not report have no neighbor of vm in their subtree, so every vertex below
+                    // them counts as a non-neighbor. Start from that and correct it for the children that did report.
+                    int childCloseSum = 1 - subtreeSize(v);
+                    int childCloseSumOverCloseChildren = 0;
 
-        // Initialize the maps for child closeness, score_max, best parent, and the set of close children.
-        Map<Vertex<V>, Integer> childCloseMap = new HashMap<>();
-        Map<Vertex<V>, Integer> scoreMaxMap = new HashMap<>();
-        _bestParentMap = new HashMap<>();
-        _closeChildren = new HashMap<>();
+                    // A child that did not report has a score_max of -1, which is never chosen.
+                    int potentialBestChild = -1;
+                    int potentialScoreMax = -1;
 
-        while (!queue.isEmpty()) {
-            Vertex<V> v = queue.poll();
+                    for (int c = _firstReported[v]; c >= 0; c = _nextReported[c]) {
+                        // If the child closeness of c is greater than 0, c is a close child of v.
+                        if (_childClose[c] > 0) {
+                            // Increment the sum over all close children
+                            childCloseSumOverCloseChildren += _childClose[c];
+                        }
+                        // Increment the sum over all children
+                        childCloseSum += _childClose[c] + subtreeSize(c);
 
-            int childCloseSum = 0;
-            int childCloseSumOverCloseChildren = 0;
+                        // if score_max(c) is better than the current potential score_max,
+                        // save the child and the score_max.
+                        if (_scoreMax[c] > potentialScoreMax) {
+                            potentialScoreMax = _scoreMax[c];
+                            potentialBestChild = c;
+                        }
+                    }
 
-            Vertex<V> potentialBestChild = null;
-            int potentialScoreMax = -1;
+                    // Save the child closeness score of v.
+                    _childClose[v] = childCloseSum + diff(v);
 
-            for (Vertex<V> c : v.getChildren()) {
-                int childCloseC = childCloseMap.get(c);
+                    // If the score_max(potentialBestChild) is greater than the sum of the child closeness of all the
+                    // close children then save it as the best parent in the subtree rooted at v. Otherwise, the best
+                    // parent in the subtree rooted at v is v.
+                    if (potentialScoreMax > childCloseSumOverCloseChildren) {
+                        _scoreMax[v] = potentialScoreMax + diff(v);
+                        _bestParent[v] = _bestParent[potentialBestChild];
+                    } else {
+                        _scoreMax[v] = childCloseSumOverCloseChildren + diff(v);
+                        _bestParent[v] = v;
+                    }
 
-                // If the child closeness of c is greater than 0, add it to the set of close children for v.
-                if (childCloseC > 0) {
-                    Set<Vertex<V>> closeChildren = _closeChildren.get(v);
-                    if (closeChildren == null) {
-                        closeChildren = new TreeSet<>();
+                    // Report v to its parent, queueing the parent if this is the first report it receives.
+                    if (v != root) {
+                        int parent = _forest.getParent(v);
+                        int reportTo = parent == vm ? oldParent : parent;
+                        if (_firstReported[reportTo] < 0) {
+                            _firstReported[reportTo] = v;
+                        } else {
+                            _nextReported[_lastReported[reportTo]] = v;
+                        }
+                        _lastReported[reportTo] = v;
+                        _nextReported[v] = -1;
+                        if (!_queued[reportTo]) {
+                            enqueue(reportTo);
+                        }
                     }
-                    closeChildren.add(c);
-                    _closeChildren.put(v, closeChildren);
-                    // Increment the sum over all close children
-                    childCloseSumOverCloseChildren += childCloseC;
                 }
-                // Increment the sum over all children
-                childCloseSum += childCloseC;
-
-                // if score_max(c) is better than the current potential score_max,
-                // save the child and the score_max.
-                int scoreMaxC = scoreMaxMap.get(c);
-                if (scoreMaxC > potentialScoreMax) {
-                    potentialScoreMax = scoreMaxC;
-                    potentialBestChild = c;
+                bucket.clear();
+            }
+
+            // The gain of a position of vm is the number of neighbors minus the number of non-neighbors among its
+            // ancestors and descendants there. The best gain is score_max of the root, less the root itself.
+            int newParent = _bestParent[root];
+            int newGain = _scoreMax[root] - 1;
+
+            // At its old position, vm has all of its old children as descendants. Those that did not report only
+            // have non-neighbors below them.
+            int oldGain = pathGain(vm, oldParent) + 1 - _forest.getSubtreeSize(vm);
+            for (int c = _firstReported[oldParent]; c >= 0; c = _nextReported[c]) {
+                if (_forest.getParent(c) == vm) {
+                    oldGain += _childClose[c] + subtreeSize(c);
                 }
             }
 
-            // Save the child closeness score of v.
-            childCloseMap.put(v, childCloseSum + diff(vm, v));
+            // The gain below the candidate only needs the path above it and the children that reported to it.
+            boolean stay = !_sidewaysMoves && newGain == oldGain;
+            if (candidate != Forest.NONE && candidate != newParent) {
+                int candidateGain = pathGain(vm, candidate);
+                for (int c = _firstReported[candidate]; c >= 0; c = _nextReported[c]) {
+                    if (_childClose[c] > 0) {
+                        candidateGain += _childClose[c];
+                    }
+                }
+                if (newGain - candidateGain <= maxWorsening) {
+                    newParent = candidate;
+                    newGain = candidateGain;
+                    stay = false;
+                }
+            }
 
-            // If the score_max(potentialBestChild) is greater than the sum of the child closeness of all the close
-            // children then save it as the best parent in the subtree rooted at v. Otherwise, the best parent
-            // in the subtree rooted at v is v.
-            if (potentialScoreMax > childCloseSumOverCloseChildren) {
-                scoreMaxMap.put(v, potentialScoreMax + diff(vm, v));
-                _bestParentMap.put(v, _bestParentMap.get(potentialBestChild));
+            // Without sideways moves, vm keeps its position and its children unless a better one saves edits.
+            Move move = nextMove();
+            move._vertex = vm;
+            move._oldParent = oldParent;
+            move._childrenToAdopt.clear();
+            if (stay) {
+                move._newParent = oldParent;
+                for (int c = _forest.getFirstChild(vm); c != Forest.NONE; c = _forest.getNextSibling(c)) {
+                    move._childrenToAdopt.add(c);
+                }
             } else {
-                scoreMaxMap.put(v, childCloseSumOverCloseChildren + diff(vm, v));
-                _bestParentMap.put(v, v);
+                move._newParent = newParent;
+                for (int c = _firstReported[newParent]; c >= 0; c = _nextReported[c]) {
+                    if (_childClose[c] > 0) {
+                        move._childrenToAdopt.add(c);
+                    }
+                }
+            }
+            move._editDelta = oldGain - newGain;
+
+            // Record the visited vertices and clear the state for the next call.
+            move._visited.clear();
+            if (candidate != Forest.NONE && candidate != root) {
+                move._visited.add(candidate);
             }
+            for (int i = 0; i < _touched.size(); i++) {
+                int v = _touched.get(i);
+                if (v != root) {
+                    move._visited.add(v);
+                }
+                _queued[v] = false;
+                _firstReported[v] = -1;
+                _depths[v] = -1;
+            }
+            _touched.clear();
+            _depths[vm] = -1;
+            for (int a = oldParent; a != root; a = _forest.getParent(a)) {
+                _ancestor[a] = false;
+            }
+            for (int p = _graph.adjacencyStart(vm); p < _graph.adjacencyEnd(vm); p++) {
+                _neighbor[_graph.getNeighbor(p)] = false;
+            }
+            return move;
         }
-    }
 
-    /**
-     * Compute the diff function for the given vertices. It is 1 if they are neighbors, and -1 otherwise.
-     *
-     * @param vm The first vertex.
-     * @param v  The second vertex.
-     * @return 1 if they are neighbors, and -1 otherwise.
-     */
-    private int diff(Vertex<V> vm, Vertex<V> v) {
-        return _graph.isNeighbor(vm, v) ? 1 : -1;
-    }
+        /**
+         * Returns a move object that is not in use, creating one if none is left.
+         *
+         * @return A move whose fields are to be overwritten.
+         */
+        private Move nextMove() {
+            if (_moveCount == _moves.size()) {
+                _moves.add(new Move());
+            }
+            return _moves.get(_moveCount++);
+        }
 
-    /**
-     * Recursively compute all the depths of the children of the given vertex in the tree.
-     *
-     * @param v     The vertex to start at.
-     * @param depth The starting depth.
-     */
-    private void computeDepths(Vertex<V> v, int depth) {
-        v.setDepth(depth);
-        v.getChildren().forEach(c -> computeDepths(c, depth + 1));
+        /**
+         * Queues the given vertex in the bucket of its depth.
+         *
+         * @param v The vertex to queue.
+         */
+        private void enqueue(int v) {
+            int depth = depth(v);
+            while (_depthBuckets.size() <= depth) {
+                _depthBuckets.add(new IntArrayList());
+            }
+            _depthBuckets.get(depth).add(v);
+            _queued[v] = true;
+            _touched.add(v);
+        }
+
+        /**
+         * Returns the depth of the given vertex in the tree. Depths are not stored in the tree, which lets a move
+         * shift a whole subtree without visiting it. Instead, the depth is found by walking up to the first vertex
+         * whose depth is already known during this call, remembering the depths on the way. All the ancestors of
+         * the neighbors of vm are visited by the core algorithm anyway, so this does not add to its cost.
+         *
+         * @param v The vertex.
+         * @return The number of edges between v and the root.
+         */
+        private int depth(int v) {
+            int root = _root;
+            int a = v;
+            while (a != root && _depths[a] < 0) {
+                _path.add(a);
+                a = _forest.getParent(a);
+            }
+            int depth = a == root ? 0 : _depths[a];
+            for (int i = _path.size() - 1; i >= 0; i--) {
+                _depths[_path.get(i)] = ++depth;
+            }
+            _path.clear();
+            return depth;
+        }
+
+        /**
+         * Compute the diff function for the vertex to move and the given vertex. It is 1 if they are neighbors, and
+         * -1 otherwise. The universal root is a neighbor of every vertex.
+         *
+         * @param v The vertex to compare to the vertex to move.
+         * @return 1 if they are neighbors, and -1 otherwise.
+         */
+        private int diff(int v) {
+            return v == _root || _neighbor[v] ? 1 : -1;
+        }
+
+        /**
+         * Computes the gain of the ancestors vm would have below the given parent.
+         *
+         * @param vm     The vertex to move.
+         * @param parent The parent to put vm below.
+         * @return The number of neighbors minus the number of non-neighbors of vm among parent and its ancestors,
+         * other than the root.
+         */
+        private int pathGain(int vm, int parent) {
+            int gain = 0;
+            for (int a = parent; a != _root; a = _forest.getParent(a) == vm ? _forest.getParent(vm) : _forest.getParent(a)) {
+                gain += diff(a);
+            }
+            return gain;
+        }
+
+        /**
+         * Returns the size of the subtree rooted at the given vertex once the vertex to move is removed.
+         *
+         * @param v The root of the subtree.
+         * @return The number of vertices in the subtree, excluding the vertex to move.
+         */
+        private int subtreeSize(int v) {
+            int size = _forest.getSubtreeSize(v);
+            return _ancestor[v] ? size - 1 : size;
+        }
     }
 
     /**
@@ -294,8 +911,8 @@ public class QuasiThresholdMover<V extends Comparable<V>> {
      * <li>Simulated Annealing
      * <ul>
      * <li>Allow the algorithm to make the occasional sub-optimal choice. The probability of making a sub-optimal
-     * choice decreases as the iteration. This can keep the algorithm from getting stuck at a local minimum.
-     * To enable this choose simulatedAnnealing to be true.</li>
+     * choice decreases with the temperature, which cools down after every iteration. This can keep the algorithm
+     * from getting stuck at a local minimum. To enable this choose simulatedAnnealing to be true.</li>
      * <li>Only allow the algorithm to make the locally optimal choice. This is the standard behaviour. For this
      * choose simulatedAnnealing to be false.</li>
      * </ul></li>
@@ -308,95 +925,468 @@ public class QuasiThresholdMover<V extends Comparable<V>> {
      * @return A quasi-threshold graph, or a tree which implies a qt graph.
      */
     public Graph<V, String> doQuasiThresholdMover(boolean showTransitiveClosures, boolean simulatedAnnealing) {
+        optimize(simulatedAnnealing);
+        return buildQtGraph(showTransitiveClosures);
+    }
+
+    /**
+     * Performs the Quasi-threshold Mover algorithm, leaving the resulting tree in this instance. The tree can then
+     * be turned into a graph with buildQtGraph.
+     * <p>
+     * The run is an anytime algorithm: the best tree is kept after every iteration, and the run ends with it,
+     * whether it converged, reached the maximum number of iterations or the edit target, ran out of time, or was
+     * cancelled.
+     * <p>
+     * With simulated annealing, every vertex examined in an annealing iteration is also offered a parent drawn
+     * uniformly at random. The move to that parent is made instead of the best one with the
+     * Metropolis probability exp(-delta / temperature), where delta is the number of edits it needs beyond the best
+     * move. Its cost is found from the same pass of the core algorithm, so an annealing iteration costs about as
+     * much as a greedy one. The run does not stop on convergence while it anneals. Unless a cooling rate is set, the
+     * first ANNEALING_FRACTION of the maximum number of iterations anneal, cooling from the initial temperature to
+     * MIN_TEMPERATURE, and the others are greedy.
+     *
+     * @param simulatedAnnealing true allows the algorithm to make a sub-optimal choice, and false only makes
+     *                           locally optimal choices.
+     */
+    public void optimize(boolean simulatedAnnealing) {
+        long deadline = System.nanoTime() + _timeBudget * 1000000L;
+
         // Run the initialize algorithm
         initialize();
+        iterate(simulatedAnnealing, _maxIterations, deadline);
+    }
 
-        // Compute the depths of the resulting tree.
-        computeDepths(_root, 0);
-
-        ArrayList<Vertex<V>> vertices = _graph.getVertices()
-                                                .stream()
-                                                .filter(vm -> vm != _root)
-                                                .collect(Collectors.toCollection(ArrayList::new));
-
-        // Do a number of iterations equal to ITERATIONS
-        for (int i = 0; i < ITERATIONS; i++) {
-            long startTime = System.nanoTime();
-
-            // Shuffle the order that the vertices are examined in.
-            Collections.shuffle(vertices);
-
-            final int finalI = i;
-
-            // Run the core algorithm on each vertex and pick the best parent.
-            vertices.forEach(vm -> {
-                Vertex<V> oldParent = vm.getParent();
-                ArrayList<Vertex<V>> oldChildren = vm.getChildren();
-
-                // Remove the vertex vm from the graph
-                changeParent(vm, _root);
-                vm.setDepth(1);
-
-                // Move children to the vm parent
-                vm.getChildren().forEach(c -> adjustChildrenDepth(c, -1));
-                vm.setChildren(new ArrayList<>());
-                oldParent.getChildren().addAll(oldChildren);
-                oldChildren.forEach(c -> c.setParent(oldParent));
-
-                // Find the new best parent by running the core algorithm.
-                core(vm);
-
-                // If simulatedAnnealing is enabled, there is a chance that a random vertex is selected to be the
-                // new parent. Otherwise select the new parent as returned by the core algorithm.
-                Vertex<V> newParent;
-                if (simulatedAnnealing) {
-                    if (_random.nextDouble() > ((double) finalI / ANNEALING_ITERATIONS)
-                                                       * INITIAL_SUB_OPTIMAL_CHOICE_PROBABILITY
-                                                       + (1d - INITIAL_SUB_OPTIMAL_CHOICE_PROBABILITY)) {
-                        ArrayList<Vertex<V>> vertexList = _graph.getVertices()
-                                                                  .stream()
-                                                                  .filter(v -> v != vm)
-                                                                  .collect(Collectors.toCollection(ArrayList::new));
-                        newParent = vertexList.get(_random.nextInt(vertexList.size()));
-                    } else {
-                        newParent = _bestParentMap.get(_root);
+    /**
+     * Runs more iterations of the algorithm on the tree left by the last run, without building a new one. The
+     * iterations run as those of optimize, with the given number as the maximum, and the iteration edit counts
+     * start again from the current tree. Running optimize without iterations and then a single one lets the cost
+     * of an iteration be measured on its own.
+     *
+     * @param iterations         The maximum number of iterations to run.
+     * @param simulatedAnnealing true allows the algorithm to make a sub-optimal choice, and false only makes
+     *                           locally optimal choices.
+     */
+    public void runIterations(int iterations, boolean simulatedAnnealing) {
+        if (_bestParents == null) {
+            throw new IllegalStateException("The tree has to be built by optimize first.");
+        }
+        if (iterations < 0) {
+            throw new IllegalArgumentException("The number of iterations must be at least 0.");
+        }
+        iterate(simulatedAnnealing, iterations, System.nanoTime() + _timeBudget * 1000000L);
+    }
+
+    /**
+     * Moves the vertices of the current tree until the run converges or has to stop, and ends with the best tree.
+     *
+     * @param simulatedAnnealing Whether the run uses simulated annealing.
+     * @param maxIterations      The maximum number of iterations.
+     * @param deadline           The value of System.nanoTime at which the time budget runs out, if there is one.
+     */
+    private void iterate(boolean simulatedAnnealing, int maxIterations, long deadline) {
+        PhaseTimer timer = PhaseTimer.start(QtmMetrics.Phase.OPTIMIZATION);
+        _edits = countEdits();
+        _iterationEdits.clear();
+        _iterationEdits.add(_edits);
+        _bestParents = new int[_root];
+        saveBest();
+
+        IntArrayList vertices = new IntArrayList(_root);
+        for (int v = 0; v < _root; v++) {
+            vertices.add(v);
+        }
+        if (_worklist) {
+            _dirty = new boolean[_root + 1];
+            _dirtyVertices = new IntArrayList();
+        }
+
+        // Every thread finds moves with its own evaluator.
+        List<MoveEvaluator> evaluators = new ArrayList<>(_threads);
+        for (int t = 0; t < _threads; t++) {
+            evaluators.add(new MoveEvaluator());
+        }
+        ForkJoinPool pool = _threads > 1 ? new ForkJoinPool(_threads) : null;
+        int batchSize = _batchSize > 0 ? _batchSize : _threads > 1 ? _threads * BATCH_SIZE_PER_THREAD : 1;
+
+        // The vertices still to examine in the current iteration, from pendingHead on, and the buffers of a batch.
+        // They are reused by every iteration and batch.
+        IntArrayList pending = new IntArrayList(_root);
+        IntArrayList batch = new IntArrayList(batchSize);
+        IntArrayList candidates = new IntArrayList(batchSize);
+        double[] maxWorsenings = new double[batchSize];
+        List<Move> moves = new ArrayList<>(batchSize);
+        _changed = new boolean[_root + 1];
+        _changedVertices = new IntArrayList();
+
+        try {
+            // Iterate until an iteration saves too few edits, or the maximum number of iterations is reached.
+            boolean stopped = shouldStop(deadline, true);
+            double temperature = simulatedAnnealing ? _initialTemperature : 0;
+            int annealingIterations = _coolingRate > 0
+                    ? Integer.MAX_VALUE
+                    : Math.max(1, (int) Math.ceil(ANNEALING_FRACTION * maxIterations));
+            double coolingRate = _coolingRate > 0
+                    ? _coolingRate
+                    : Math.min(1, Math.pow(MIN_TEMPERATURE / _initialTemperature, 1.0 / annealingIterations));
+            // Whether the iteration confirms that the run converged. It examines every vertex, even with the
+            // worklist, and makes no sideways moves, so if it saves no edits it leaves the tree as it was, and no
+            // vertex has a move that saves edits.
+            boolean confirming = false;
+            _sidewaysMoves = true;
+            for (int i = 0; i < maxIterations && !stopped; i++) {
+                long editsBefore = _edits;
+                boolean annealing = i < annealingIterations && temperature >= MIN_TEMPERATURE;
+
+                // After the first iteration, the worklist only keeps the vertices marked by the previous one. Once
+                // it runs dry, the run has to confirm that it converged.
+                if (_worklist && i > 0) {
+                    confirming |= !annealing && _dirtyVertices.isEmpty();
+                    vertices.clear();
+                    for (int j = 0; j < _dirtyVertices.size(); j++) {
+                        if (!confirming) {
+                            vertices.add(_dirtyVertices.get(j));
+                        }
+                        _dirty[_dirtyVertices.get(j)] = false;
                     }
-                } else {
-                    newParent = _bestParentMap.get(_root);
+                    _dirtyVertices.clear();
+                    if (confirming) {
+                        for (int v = 0; v < _root; v++) {
+                            vertices.add(v);
+                        }
+                    }
+                }
+                _sidewaysMoves = !confirming;
+
+                // Shuffle the order that the vertices are examined in.
+                shuffle(vertices);
+                pending.clear();
+                for (int j = 0; j < vertices.size(); j++) {
+                    pending.add(vertices.get(j));
+                }
+                int pendingHead = 0;
+                if (_monitor != null) {
+                    _monitor.iterationStarted(i, vertices.size());
+                }
+                Object recording = FlightRecorderEvents.beginIteration();
+
+                // Run the core algorithm on batches of vertices and move each to its best parent.
+                int examined = 0;
+                int moveCount = 0;
+                while (pendingHead < pending.size()) {
+                    // Moves found in batches leave the number of edits approximate until the end of the iteration,
+                    // so the edit target is only checked between batches when the moves are found one at a time.
+                    if (shouldStop(deadline, batchSize == 1)) {
+                        stopped = true;
+                        break;
+                    }
+                    batch.clear();
+                    candidates.clear();
+                    while (batch.size() < batchSize && pendingHead < pending.size()) {
+                        int vm = pending.get(pendingHead++);
+
+                        // While annealing, a random vertex other than vm, including the root, is offered as the new
+                        // parent. The Metropolis criterion accepts it if it is worse than the best parent by no
+                        // more than -temperature * ln(u), for u uniform in (0, 1].
+                        int candidate = Forest.NONE;
+                        if (annealing) {
+                            candidate = _random.nextInt(_root);
+                            if (candidate >= vm) {
+                                candidate++;
+                            }
+                            maxWorsenings[batch.size()] = -temperature * Math.log(1 - _random.nextDouble());
+                        }
+                        batch.add(vm);
+                        candidates.add(candidate);
+                    }
+
+                    evaluateMoves(batch, candidates, maxWorsenings, evaluators, pool, moves);
+
+                    // Apply the moves in order. A move that read a vertex changed by an earlier move of the batch
+                    // is out of date, so its vertex is examined again in a later batch.
+                    int examinedBefore = examined;
+                    for (Move move : moves) {
+                        if (conflicts(move)) {
+                            pending.add(move._vertex);
+                        } else {
+                            if (applyMove(move)) {
+                                moveCount++;
+                            }
+                            examined++;
+                        }
+                    }
+                    for (int j = 0; j < _changedVertices.size(); j++) {
+                        _changed[_changedVertices.get(j)] = false;
+                    }
+                    _changedVertices.clear();
+                    if (_monitor != null && examined / PROGRESS_INTERVAL != examinedBefore / PROGRESS_INTERVAL) {
+                        _monitor.verticesExamined(examined);
+                    }
+                }
+
+                // Moves applied after others of their batch were found against slightly outdated subtree sizes, so
+                // their edit changes may be off. Recount to keep the number of edits exact.
+                if (batchSize > 1) {
+                    _edits = countEdits();
                 }
-                // Change to the new parent and update the depth.
-                changeParent(vm, newParent);
-                vm.setDepth(newParent.getDepth() + 1);
-
-                // Adopt all the children of the new parent that are close to vm.
-                Set<Vertex<V>> childrenToAdopt = _closeChildren.get(newParent);
-                if (childrenToAdopt != null) {
-                    newParent.getChildren().removeAll(childrenToAdopt);
-                    vm.setChildren(new ArrayList<>(childrenToAdopt));
-                    childrenToAdopt.forEach(c -> adjustChildrenDepth(c, 1));
-                    childrenToAdopt.forEach(c -> c.setParent(vm));
+                if (_edits < _bestEdits) {
+                    saveBest();
                 }
-            });
-            long endTime = System.nanoTime();
+                _metrics.addIteration(examined, moveCount);
+                FlightRecorderEvents.commitIteration(recording, i, examined, moveCount, _edits);
 
-            // ************************************
-            // Uncomment this to track the number of edits after each iteration.
-            //*************************************
-//            System.out.println("Edits (iteration " + (i + 1) + "): "
-//                                       + GraphEditCounter.numberOfEditsAfterFinished(_originalGraph, buildQtGraph(true)));
+                // An iteration cut short is recorded as well, so that the counts end with the tree the run stopped at.
+                _iterationEdits.add(_edits);
+                if (_monitor != null) {
+                    _monitor.verticesExamined(examined);
+                    _monitor.iterationFinished(i, _edits);
+                }
+                if (stopped) {
+                    break;
+                }
+
+                // Sideways moves can open up moves that save edits for the vertices examined before them, and the
+                // worklist misses vertices whose better position comes from changes further away. So an iteration
+                // that saves too few edits is followed by one that confirms it.
+                if (!annealing && editsBefore - _edits <= _convergenceThreshold * editsBefore) {
+                    if (confirming) {
+                        break;
+                    }
+                    confirming = true;
+                } else {
+                    confirming = false;
+                }
+                temperature *= coolingRate;
+                stopped = shouldStop(deadline, true);
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
         }
-        return buildQtGraph(showTransitiveClosures);
+
+        // Simulated annealing, and moves found in parallel, can make the tree worse. End with the best one.
+        if (_bestEdits < _edits) {
+            restoreBest();
+        }
+        timer.stop(_metrics, _root, _graph.getEdgeCount());
     }
 
     /**
-     * Adjusts the depth counter of the given vertex.
+     * Checks whether the run has to stop before it converges: when it is cancelled, runs out of time, or reaches
+     * the edit target.
      *
-     * @param v          The vertex whose depth needs to be adjusted.
-     * @param adjustment The amount by which to adjust the depth.
+     * @param deadline   The value of System.nanoTime at which the time budget runs out, if there is one.
+     * @param editsExact Whether the number of edits is exact, so that it can be compared to the edit target.
+     * @return true if the run has to stop, and false otherwise.
+     */
+    private boolean shouldStop(long deadline, boolean editsExact) {
+        return (_monitor != null && _monitor.isCancelled())
+                || (_timeBudget > 0 && System.nanoTime() - deadline >= 0)
+                || (editsExact && _edits <= _editTarget);
+    }
+
+    /**
+     * Saves the current tree as the best one found so far.
+     */
+    private void saveBest() {
+        for (int v = 0; v < _root; v++) {
+            _bestParents[v] = _forest.getParent(v);
+        }
+        _bestEdits = _edits;
+    }
+
+    /**
+     * Replaces the current tree with the best one found so far.
      */
-    private void adjustChildrenDepth(Vertex<V> v, int adjustment) {
-        v.setDepth(v.getDepth() + adjustment);
-        v.getChildren().forEach(c -> adjustChildrenDepth(c, adjustment));
+    private void restoreBest() {
+        _forest.clear();
+        for (int v = 0; v < _root; v++) {
+            _forest.setParent(v, _bestParents[v]);
+        }
+        _forest.computeSubtreeSizes();
+        _edits = _bestEdits;
+    }
+
+    /**
+     * Finds the moves of a batch of vertices. The tree is not modified, so with more than one thread the batch is
+     * split between the threads, each using its own evaluator.
+     *
+     * @param batch         The vertices to find moves for.
+     * @param candidates    The random parent offered to each vertex, or Forest.NONE to use the best parent.
+     * @param maxWorsenings The number of edits by which the move to the candidate of each vertex may be worse
+     *                      than its best move and still be made.
+     * @param evaluators    One evaluator per thread.
+     * @param pool          The pool to run the evaluators in, or null to run on the calling thread.
+     * @param moves         Receives the move of each vertex of the batch, in the same order. The moves of the
+     *                      previous batch it holds are reused.
+     */
+    private void evaluateMoves(IntArrayList batch,
+                               IntArrayList candidates,
+                               double[] maxWorsenings,
+                               List<MoveEvaluator> evaluators,
+                               ForkJoinPool pool,
+                               List<Move> moves) {
+        evaluators.forEach(MoveEvaluator::clearMoves);
+        moves.clear();
+        for (int j = 0; j < batch.size(); j++) {
+            moves.add(null);
+        }
+        if (pool == null) {
+            for (int j = 0; j < batch.size(); j++) {
+                moves.set(j, evaluators.get(0).core(batch.get(j), candidates.get(j), maxWorsenings[j]));
+            }
+        } else {
+            // Each thread takes every evaluators.size()-th vertex of the batch.
+            ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[evaluators.size()];
+            for (int t = 0; t < evaluators.size(); t++) {
+                final int worker = t;
+                tasks[t] = pool.submit(() -> {
+                    for (int j = worker; j < batch.size(); j += evaluators.size()) {
+                        moves.set(j, evaluators.get(worker).core(batch.get(j), candidates.get(j), maxWorsenings[j]));
+                    }
+                });
+            }
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a move read any vertex that was changed after the move was found.
+     * <p>
+     * Subtree sizes along the ancestor paths of earlier moves are not tracked. Each earlier move changes them by
+     * one, which only slightly shifts the scores, and never makes the move itself invalid.
+     *
+     * @param move The move to check.
+     * @return true if the move is out of date, and false otherwise.
+     */
+    private boolean conflicts(Move move) {
+        if (_changedVertices.isEmpty()) {
+            return false;
+        }
+        if (_changed[move._vertex] || _changed[move._oldParent] || _changed[move._newParent]) {
+            return true;
+        }
+        for (int i = 0; i < move._visited.size(); i++) {
+            if (_changed[move._visited.get(i)]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves a vertex to its new parent and adopts the children found by the core algorithm. The vertices whose
+     * position in the tree is changed by the move, other than the root, are marked as changed.
+     *
+     * @param move The move to apply.
+     * @return true if the vertex changed position, and false if the move left it in place.
+     */
+    private boolean applyMove(Move move) {
+        int vm = move._vertex;
+        int oldParent = _forest.getParent(vm);
+        int newParent = move._newParent;
+        IntArrayList childrenToAdopt = move._childrenToAdopt;
+
+        // The move leaves vm in place if it keeps its parent and adopts exactly its old children.
+        boolean moved = newParent != oldParent;
+        int oldChildCount = 0;
+        for (int c = _forest.getFirstChild(vm); c != Forest.NONE; c = _forest.getNextSibling(c)) {
+            oldChildCount++;
+        }
+        moved |= oldChildCount != childrenToAdopt.size();
+        for (int i = 0; i < childrenToAdopt.size() && !moved; i++) {
+            moved = _forest.getParent(childrenToAdopt.get(i)) != vm;
+        }
+        if (!moved) {
+            return false;
+        }
+
+        // As vm changes position, the vertices around it may now have a better position. So may vm itself, once
+        // later moves of the iteration change its neighborhood.
+        if (_worklist) {
+            markDirty(vm);
+            for (int p = _graph.adjacencyStart(vm); p < _graph.adjacencyEnd(vm); p++) {
+                markDirty(_graph.getNeighbor(p));
+            }
+            markDirty(oldParent);
+            markDirty(newParent);
+        }
+
+        // Remove the vertex vm from the graph
+        _forest.adjustSubtreeSizes(oldParent, -1);
+        _forest.setParent(vm, Forest.NONE);
+        _forest.setSubtreeSize(vm, 1);
+
+        // Move children to the vm parent
+        while (_forest.hasChildren(vm)) {
+            int c = _forest.getFirstChild(vm);
+            _forest.setParent(c, oldParent);
+            if (_worklist) {
+                markDirty(c);
+            }
+        }
+
+        // Change to the new parent.
+        _forest.setParent(vm, newParent);
+        _forest.adjustSubtreeSizes(newParent, 1);
+
+        // Adopt all the children of the new parent that are close to vm.
+        for (int i = 0; i < childrenToAdopt.size(); i++) {
+            int c = childrenToAdopt.get(i);
+            _forest.setParent(c, vm);
+            _forest.setSubtreeSize(vm, _forest.getSubtreeSize(vm) + _forest.getSubtreeSize(c));
+            if (_worklist) {
+                markDirty(c);
+            }
+            markChanged(c);
+        }
+
+        _edits += move._editDelta;
+
+        markChanged(vm);
+        markChanged(oldParent);
+        markChanged(newParent);
+        return moved;
+    }
+
+    /**
+     * Marks a vertex as changed by a move of the current batch.
+     *
+     * @param v The vertex to mark. The root is ignored.
+     */
+    private void markChanged(int v) {
+        if (v != _root && !_changed[v]) {
+            _changed[v] = true;
+            _changedVertices.add(v);
+        }
+    }
+
+    /**
+     * Marks a vertex to be examined in the next iteration of the worklist.
+     *
+     * @param v The vertex to mark. The root is ignored.
+     */
+    private void markDirty(int v) {
+        if (v != _root && !_dirty[v]) {
+            _dirty[v] = true;
+            _dirtyVertices.add(v);
+        }
+    }
+
+    /**
+     * Shuffles the given vertices with the random generator, the same way as Collections.shuffle.
+     *
+     * @param vertices The vertices to shuffle.
+     */
+    private void shuffle(IntArrayList vertices) {
+        for (int i = vertices.size(); i > 1; i--) {
+            int j = _random.nextInt(i);
+            int v = vertices.get(i - 1);
+            vertices.set(i - 1, vertices.get(j));
+            vertices.set(j, v);
+        }
     }
 
     /**
@@ -412,52 +1402,139 @@ public class QuasiThresholdMover<V extends Comparable<V>> {
      * @param showTransitiveClosures true returns the actual edited graph,
      *                               and false returns only the skeleton tree structure.
      * @return A quasi-threshold graph, or a tree which implies a qt graph.
+     * @see #writeQtGraph(boolean, QtGraphConsumer)
      */
-    private Graph<V, String> buildQtGraph(boolean showTransitiveClosures) {
+    public Graph<V, String> buildQtGraph(boolean showTransitiveClosures) {
         Graph<V, String> returnGraph = new SparseGraph<>();
+        EdgeType edgeType = showTransitiveClosures ? EdgeType.UNDIRECTED : EdgeType.DIRECTED;
+        writeQtGraph(showTransitiveClosures, new QtGraphConsumer<V>() {
+            @Override
+            public void addVertex(int v, V id) {
+                returnGraph.addVertex(id);
+            }
 
-        if (showTransitiveClosures) {
-            _root.getChildren().stream().forEach(v -> {
-                Set<Vertex<V>> ancestors = new HashSet<>();
-                addEdges(v, ancestors, returnGraph);
-            });
-        } else {
-            bfsBuildGraph(returnGraph, _root);
-        }
-        _graph.removeVertex(_root);
+            @Override
+            public void addEdge(int ancestor, int v) {
+                V ancestorId = _ids.getId(ancestor);
+                V id = _ids.getId(v);
+                returnGraph.addEdge(ancestorId + "-" + id, ancestorId, id, edgeType);
+            }
+        });
         return returnGraph;
     }
 
-    private void bfsBuildGraph(Graph<V, String> returnGraph, Vertex<V> current) {
-        if (current.getParent() != _root) {
-            returnGraph.addVertex(current.getId());
-            returnGraph.addEdge(current.getParent().getId() + "-" + current.getId(),
-                    current.getParent().getId(),
-                    current.getId(),
-                    EdgeType.DIRECTED);
+    /**
+     * Streams the graph implied by the tree structure output from the core algorithm to the given consumer, without
+     * building it. The tree is walked in preorder through the parent and sibling links, so every vertex comes after
+     * its ancestors, and its edges are found by walking up to the root. The closure can thus be far larger than the
+     * memory available.
+     * <p>
+     * There are two options:
+     * <ol>
+     * <li>Stream the entire edited graph: every vertex with an edge from each of its ancestors other than the root.
+     * For this choose showTransitiveClosures to be true</li>
+     * <li>Stream only the skeleton tree structure that implies the qt graph: every vertex with an edge from its
+     * parent, unless its parent is the root. For this choose showTransitiveClosures to be false.</li>
+     * </ol>
+     *
+     * @param showTransitiveClosures true streams the actual edited graph,
+     *                               and false streams only the skeleton tree structure.
+     * @param consumer               Receives the vertices and edges of the graph.
+     */
+    public void writeQtGraph(boolean showTransitiveClosures, QtGraphConsumer<V> consumer) {
+        PhaseTimer timer = PhaseTimer.start(QtmMetrics.Phase.RESULT_BUILDING);
+        long edgeCount = 0;
+        for (int v = _forest.nextInPreorder(_root); v != Forest.NONE; v = _forest.nextInPreorder(v)) {
+            consumer.addVertex(v, _ids.getId(v));
+            int parent = _forest.getParent(v);
+            if (showTransitiveClosures) {
+                for (int a = parent; a != _root; a = _forest.getParent(a)) {
+                    consumer.addEdge(a, v);
+                    edgeCount++;
+                }
+            } else if (parent != _root) {
+                consumer.addEdge(parent, v);
+                edgeCount++;
+            }
         }
-        current.getChildren().forEach(c -> bfsBuildGraph(returnGraph, c));
+        timer.stop(_metrics, _root, edgeCount);
+    }
+
+    /**
+     * Returns the number of vertices of the graph, not counting the universal root.
+     *
+     * @return The number of vertices.
+     */
+    public int getVertexCount() {
+        return _root;
+    }
+
+    /**
+     * Returns the number of edits implied by the current tree, which is maintained while the algorithm runs.
+     *
+     * @return The number of edge insertions and deletions.
+     */
+    public long getEditCount() {
+        return _edits;
     }
 
     /**
-     * Recursively adds the edges to the quasi-threshold graph skeleton.
+     * Returns the measurements of the phases this instance has run: counting triangles, initializing the tree,
+     * moving vertices and building the result, and of the graph reading that created it, if any. The metrics keep
+     * being updated by the phases that run later; copy them to keep a snapshot.
      *
-     * @param v           The current vertex.
-     * @param ancestors   A set of all the ancestor of the current vertex.
-     * @param returnGraph The graph to be returned.
+     * @return The metrics of this instance.
      */
-    private void addEdges(Vertex<V> v, Set<Vertex<V>> ancestors, Graph<V, String> returnGraph) {
-        // Add the current vertex to the return graph.
-        returnGraph.addVertex(v.getId());
+    public QtmMetrics getMetrics() {
+        return _metrics;
+    }
+
+    /**
+     * Returns the number of edits after the initialization and after each iteration of the last run. If the run was
+     * stopped partway through an iteration, by its time budget, its edit target or a cancellation, the last count is
+     * the one of the tree it stopped at. The run ends with the best tree, whose edits are the lowest of the counts.
+     *
+     * @return The number of edits, starting with the one of the initial tree.
+     */
+    public List<Long> getIterationEditCounts() {
+        return Collections.unmodifiableList(_iterationEdits);
+    }
 
-        // Add edges from all the ancestor of v to v.
-        ancestors.stream().forEach(a -> returnGraph.addEdge(a.getId() + "-" + v.getId(), a.getId(), v.getId()));
+    /**
+     * Counts the number of edits needed to turn the input graph into the quasi-threshold graph implied by the
+     * current tree: the edges of the transitive closure missing from the input graph, plus the edges of the input
+     * graph missing from the closure. Only meaningful once optimize has run.
+     *
+     * @return The number of edge insertions and deletions.
+     */
+    public long countEdits() {
+        // Marks the vertices on the path from the root to the previous vertex of the walk, other than the root, and
+        // counts them.
+        boolean[] onPath = new boolean[_graph.getVertexCount()];
+        int pathLength = 0;
+        long edits = _graph.getEdgeCount();
+        int previous = _root;
+        for (int v = _forest.nextInPreorder(_root); v != Forest.NONE; v = _forest.nextInPreorder(v)) {
+            // In preorder, the parent of v is on the path. Leave the vertices below it.
+            int parent = _forest.getParent(v);
+            for (int a = previous; a != parent; a = _forest.getParent(a)) {
+                onPath[a] = false;
+                pathLength--;
+            }
 
-        // Recursively apply addEdges to the children.
-        if (!v.getChildren().isEmpty()) {
-            Set<Vertex<V>> newAncestors = new HashSet<>(ancestors);
-            newAncestors.add(v);
-            v.getChildren().stream().forEach(c -> addEdges(c, newAncestors, returnGraph));
+            // Every vertex is joined to each of its ancestors other than the root. Such an edge is an insertion if it
+            // is not in the input graph, and otherwise saves the deletion of that input edge.
+            long keptEdges = 0;
+            for (int p = _graph.adjacencyStart(v); p < _graph.adjacencyEnd(v); p++) {
+                if (onPath[_graph.getNeighbor(p)]) {
+                    keptEdges++;
+                }
+            }
+            edits += pathLength - 2 * keptEdges;
+            onPath[v] = true;
+            pathLength++;
+            previous = v;
         }
+        return edits;
     }
 }
@@ -0,0 +1,311 @@
+package ubco.batch;
+
+import ubco.algorithm.MultiStartMonitor;
+import ubco.algorithm.MultiStartQuasiThresholdMover;
+import ubco.algorithm.ProgressMonitor;
+import ubco.algorithm.QtGraphConsumer;
+import ubco.algorithm.QtmMetrics;
+import ubco.algorithm.QuasiThresholdMover;
+import ubco.structure.CsrGraph;
+import ubco.utility.NumberWriter;
+import ubco.utility.PhaseTimer;
+import ubco.utility.TriangleCounter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractList;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * Runs the QuasiThresholdMover on an edge list file from the command line, without Gephi. It only needs the classes
+ * of the plugin and JUNG on the class path, for example:
+ * <pre>
+ * java -cp qt-communities.jar:jung-graph-impl.jar:jung-api.jar ubco.batch.BatchRunner --threads 8 graph.txt result.txt
+ * </pre>
+ * The result file has a line for every vertex with its id, the id of its parent in the tree, or NO_PARENT (-1) for
+ * the top of a community, and the id of the top of its community. Vertex ids are never negative, since the edge
+ * lists cannot hold negative ids and snapshots that do are refused, so NO_PARENT is never taken for a vertex.
+ * Comment lines, which start with '#', give the number of edits. The progress and the metrics of the phases are
+ * written to the standard error.
+ * <p>
+ * With --write-snapshot, the graph and its triangle counts are also saved as a GraphSnapshot. Later runs that read
+ * the snapshot instead of the edge list skip the parsing and the triangle counting.
+ *
+ * @author Zach Holland
+ */
+public class BatchRunner {
+
+    // The exit status of a run with invalid arguments, and of a run that failed to read or write a file.
+    public static final int USAGE_ERROR = 2;
+    public static final int IO_ERROR = 1;
+
+    // The parent written for the top of a community, which is also the id of the universal root.
+    public static final long NO_PARENT = -1;
+
+    // The name of the format of snapshot files.
+    private static final String SNAPSHOT = "SNAPSHOT";
+
+    private static final String USAGE = String.join("\n",
+            "Usage: BatchRunner [options] <graph file> <result file>",
+            "Options:",
+            "  --format text|binary|snapshot",
+            "                         The format of the graph file. Files that start like a snapshot are",
+            "                         snapshots, files ending in .bin are binary edge lists, and others are text",
+            "                         edge lists.",
+            "  --write-snapshot <f>   Save the graph and its triangle counts as a snapshot, for faster runs later.",
+            "  --threads <n>          The number of threads that read the file and move the vertices. Default 1.",
+            "  --iterations <n>       The maximum number of iterations. Default " + QuasiThresholdMover.ITERATIONS + ".",
+            "  --time-budget <s>      The time the optimization may take, in seconds. Default no limit.",
+            "  --edit-target <n>      Stop as soon as the tree needs no more than this number of edits.",
+            "  --seed <n>             The seed of the random generator. Default random.",
+            "  --starts <n>           Run this many independent starts, --threads at a time, and keep the best.",
+            "  --annealing            Use simulated annealing.",
+            "  --worklist             Only examine the vertices near the moves of the previous iteration.");
+
+    public static void main(String[] args) {
+        String format = null;
+        Path snapshotOutput = null;
+        int threads = 1;
+        int iterations = QuasiThresholdMover.ITERATIONS;
+        long timeBudget = 0;
+        long editTarget = 0;
+        Long seed = null;
+        int starts = 1;
+        boolean annealing = false;
+        boolean worklist = false;
+        Path input = null;
+        Path output = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--format":
+                        format = value(args, ++i).toUpperCase();
+                        break;
+                    case "--write-snapshot":
+                        snapshotOutput = Paths.get(value(args, ++i));
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--iterations":
+                        iterations = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--time-budget":
+                        timeBudget = Math.round(1000 * Double.parseDouble(value(args, ++i)));
+                        break;
+                    case "--edit-target":
+                        editTarget = Long.parseLong(value(args, ++i));
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value(args, ++i));
+                        break;
+                    case "--starts":
+                        starts = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--annealing":
+                        annealing = true;
+                        break;
+                    case "--worklist":
+                        worklist = true;
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i] + ".");
+                        } else if (input == null) {
+                            input = Paths.get(args[i]);
+                        } else if (output == null) {
+                            output = Paths.get(args[i]);
+                        } else {
+                            throw new IllegalArgumentException("Too many files.");
+                        }
+                }
+            }
+            if (output == null) {
+                throw new IllegalArgumentException("A graph file and a result file are needed.");
+            }
+            if (format == null) {
+                format = GraphSnapshot.isSnapshot(input) ? SNAPSHOT
+                        : input.toString().endsWith(".bin") ? "BINARY" : "TEXT";
+            }
+
+            // Read the graph, from a snapshot or from an edge list.
+            PhaseTimer timer = PhaseTimer.start(QtmMetrics.Phase.READING);
+            CsrGraph graph;
+            long[] ids;
+            int[] triangles = null;
+            if (format.equals(SNAPSHOT)) {
+                GraphSnapshot snapshot = GraphSnapshot.load(input);
+                graph = snapshot.getGraph();
+                ids = snapshot.getIds();
+                triangles = snapshot.getTriangles();
+            } else {
+                EdgeListReader reader = new EdgeListReader(threads);
+                reader.read(input, EdgeListReader.Format.valueOf(format));
+                graph = reader.getGraph();
+                ids = reader.getIds();
+            }
+            QuasiThresholdMover<Long> qtm = new QuasiThresholdMover<>(graph, new LongIdList(ids), NO_PARENT);
+            timer.stop(qtm.getMetrics(), ids.length, graph.getEdgeCount());
+            System.err.println("Read " + ids.length + " vertices and " + graph.getEdgeCount() + " edges.");
+
+            // Save the snapshot, counting the triangles now so that the algorithm uses the same counts.
+            if (snapshotOutput != null) {
+                if (triangles == null) {
+                    triangles = TriangleCounter.countAllTriangles(graph, threads, qtm.getMetrics());
+                }
+                new GraphSnapshot(graph, ids, triangles).write(snapshotOutput);
+                System.err.println("Wrote the snapshot " + snapshotOutput + ".");
+            }
+            if (triangles != null) {
+                qtm.setTriangles(triangles);
+            }
+
+            // Run the algorithm.
+            qtm.setThreads(threads);
+            qtm.setMaxIterations(iterations);
+            qtm.setTimeBudget(timeBudget);
+            qtm.setEditTarget(editTarget);
+            if (seed != null) {
+                qtm.setSeed(seed);
+            }
+            qtm.setWorklist(worklist);
+            QuasiThresholdMover<Long> result = qtm;
+            if (starts > 1) {
+                // Every start runs on a single thread, and as many starts as threads run at the same time.
+                MultiStartQuasiThresholdMover<Long> multiStart = new MultiStartQuasiThresholdMover<>(
+                        qtm, starts, seed != null ? seed : new Random().nextLong());
+                multiStart.setParallelism(threads);
+                multiStart.setMonitor(new MultiStartMonitor() {
+                    @Override
+                    public void startFinished(int finished, int total, long edits) {
+                        System.err.println("Finished " + finished + " of " + total + " starts: " + edits + " edits");
+                    }
+
+                    @Override
+                    public boolean isCancelled() {
+                        return false;
+                    }
+                });
+                result = multiStart.optimize(annealing);
+                System.err.println("Best start: " + result.getEditCount() + " edits");
+
+                // The reading and the triangle counting are measured by the instance the starts share.
+                System.err.println(qtm.getMetrics());
+            } else {
+                qtm.setProgressMonitor(new ConsoleMonitor());
+                qtm.optimize(annealing);
+            }
+
+            writeResult(result, ids, output);
+            System.err.println(result.getMetrics());
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(USAGE_ERROR);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(IO_ERROR);
+        }
+    }
+
+    /**
+     * Returns the value of an option.
+     *
+     * @param args  The command line arguments.
+     * @param index The index of the value.
+     * @return The value.
+     */
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("The option " + args[index - 1] + " needs a value.");
+        }
+        return args[index];
+    }
+
+    /**
+     * Writes the parent and the community of every vertex of the tree. The tree is streamed as its skeleton, whose
+     * edges go from each parent to its child, parents first, so the community of a vertex is known from its parent.
+     *
+     * @param qtm    The algorithm whose tree to write.
+     * @param ids    The id of each vertex, indexed by vertex index.
+     * @param output The file to write.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void writeResult(QuasiThresholdMover<Long> qtm, long[] ids, Path output) throws IOException {
+        int n = qtm.getVertexCount();
+        int[] parents = new int[n];
+        int[] communities = new int[n];
+        qtm.writeQtGraph(false, new QtGraphConsumer<Long>() {
+            @Override
+            public void addVertex(int v, Long id) {
+                parents[v] = -1;
+                communities[v] = v;
+            }
+
+            @Override
+            public void addEdge(int ancestor, int v) {
+                parents[v] = ancestor;
+                communities[v] = communities[ancestor];
+            }
+        });
+
+        try (NumberWriter writer = new NumberWriter(Files.newOutputStream(output))) {
+            writer.writeComment(qtm.getEditCount() + " edits");
+            writer.writeComment("vertex parent community");
+            for (int v = 0; v < n; v++) {
+                writer.writeLine(ids[v], parents[v] >= 0 ? ids[parents[v]] : NO_PARENT, ids[communities[v]]);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Writes the number of edits after every iteration to the standard error.
+     */
+    private static class ConsoleMonitor implements ProgressMonitor {
+        @Override
+        public void iterationStarted(int iteration, int vertexCount) {
+        }
+
+        @Override
+        public void verticesExamined(int examined) {
+        }
+
+        @Override
+        public void iterationFinished(int iteration, long edits) {
+            System.err.println("Iteration " + (iteration + 1) + ": " + edits + " edits");
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    }
+
+    /**
+     * A read-only view of primitive ids as a list, so that the ids of a large graph are not boxed all at once.
+     */
+    private static class LongIdList extends AbstractList<Long> implements RandomAccess {
+        private final long[] _ids;
+
+        LongIdList(long[] ids) {
+            _ids = ids;
+        }
+
+        @Override
+        public Long get(int index) {
+            return _ids[index];
+        }
+
+        @Override
+        public int size() {
+            return _ids.length;
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package ubco.batch;
+
+import ubco.structure.CsrGraph;
+import ubco.utility.LongIntHashMap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads an edge list file into the compressed graph of the algorithm, without any Gephi or JUNG structures in
+ * between. The file is memory mapped in chunks, and the chunks are parsed in parallel.
+ * <p>
+ * Two formats are read:
+ * <ul>
+ * <li>TEXT: one edge per line, as two non-negative integer ids separated by spaces or tabs. Anything after the two
+ * ids, like a weight, is ignored, and so are empty lines and lines that start with '#' or '%'.</li>
+ * <li>BINARY: every edge as two unsigned 32-bit little-endian ids, with nothing else in the file.</li>
+ * </ul>
+ * The ids are mapped to dense vertex indices. When the ids are small compared to the number of edges, as in most
+ * edge lists, they are indexed through a table in ascending order, in parallel. Otherwise they go through a
+ * primitive hash map, in order of first appearance. Self loops and parallel edges are dropped, and so are vertices
+ * without edges, since the file does not mention them.
+ *
+ * @author Zach Holland
+ */
+public class EdgeListReader {
+
+    /**
+     * The formats of edge list files.
+     */
+    public enum Format {
+        TEXT,
+        BINARY
+    }
+
+    // The number of bytes of the file each parsing task reads. It is a multiple of the size of a binary edge.
+    public static final int CHUNK_SIZE = 64 << 20;
+
+    // The longest line of a text edge list, in bytes. The last line of a chunk may run past its end by this much.
+    public static final int MAX_LINE_LENGTH = 4096;
+
+    // The ids are indexed through a table when the largest id is below this factor times the number of endpoints.
+    public static final int DENSE_ID_FACTOR = 4;
+
+    // The number of threads that parse the file and index the ids.
+    private final int _threads;
+
+    // The number of bytes of the file each parsing task reads.
+    private final int _chunkSize;
+
+    // The graph that was read, and the id of each of its vertices, indexed by vertex index.
+    private CsrGraph _graph;
+    private long[] _ids;
+
+    /**
+     * Creates a reader that uses the given number of threads.
+     *
+     * @param threads The number of threads, at least 1.
+     */
+    public EdgeListReader(int threads) {
+        this(threads, CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a reader that uses the given number of threads and chunk size. Small chunks let the tests put many
+     * lines across chunk boundaries.
+     *
+     * @param threads   The number of threads, at least 1.
+     * @param chunkSize The number of bytes of the file each parsing task reads, a positive multiple of 8.
+     */
+    EdgeListReader(int threads, int chunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1.");
+        }
+        if (chunkSize < 8 || chunkSize % 8 != 0) {
+            throw new IllegalArgumentException("The chunk size must be a positive multiple of 8.");
+        }
+        _threads = threads;
+        _chunkSize = chunkSize;
+    }
+
+    /**
+     * Reads an edge list file. The graph and its ids are then available from getGraph and getIds.
+     *
+     * @param path   The file to read.
+     * @param format The format of the file.
+     * @throws IOException If the file cannot be read or is not a valid edge list.
+     */
+    public void read(Path path, Format format) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try {
+            // Parse the chunks of the file into the ids of the endpoints of their edges.
+            List<Chunk> chunks;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (format == Format.BINARY && size % 8 != 0) {
+                    throw new IOException(path + ": the size of a binary edge list must be a multiple of 8 bytes.");
+                }
+                List<Callable<Chunk>> parsers = new ArrayList<>();
+                for (long start = 0; start < size; start += _chunkSize) {
+                    long chunkStart = start;
+                    long chunkEnd = Math.min(size, start + _chunkSize);
+                    parsers.add(() -> format == Format.TEXT
+                            ? parseText(path, channel, chunkStart, chunkEnd, size)
+                            : parseBinary(channel, chunkStart, chunkEnd));
+                }
+                chunks = runAll(pool, parsers);
+            }
+
+            // The edges of each chunk start after the edges of the chunks before it.
+            long edgeCount = 0;
+            long maxId = -1;
+            int[] firstEdges = new int[chunks.size()];
+            for (int i = 0; i < chunks.size(); i++) {
+                firstEdges[i] = (int) edgeCount;
+                edgeCount += chunks.get(i)._size / 2;
+                maxId = Math.max(maxId, chunks.get(i)._maxId);
+                if (edgeCount > Integer.MAX_VALUE) {
+                    throw new IOException(path + ": more than " + Integer.MAX_VALUE + " edges.");
+                }
+            }
+            int[] sources = new int[(int) edgeCount];
+            int[] targets = new int[(int) edgeCount];
+
+            if (maxId < Integer.MAX_VALUE - 8 && maxId < DENSE_ID_FACTOR * 2 * edgeCount) {
+                indexDense(pool, chunks, (int) maxId, firstEdges, sources, targets);
+            } else {
+                indexSparse(chunks, firstEdges, sources, targets);
+            }
+            _graph = CsrGraph.fromEdgeList(_ids.length, sources, targets, (int) edgeCount);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public CsrGraph getGraph() {
+        return _graph;
+    }
+
+    /**
+     * Returns the ids the vertices had in the file.
+     *
+     * @return The id of each vertex, indexed by vertex index.
+     */
+    public long[] getIds() {
+        return _ids;
+    }
+
+    /**
+     * Indexes the ids through a table over the whole id range. Every id present is marked in parallel, the marked
+     * ids are numbered in ascending order, and then the endpoints are replaced by their index in parallel.
+     *
+     * @param pool       The pool that runs the tasks.
+     * @param chunks     The parsed chunks.
+     * @param maxId      The largest id.
+     * @param firstEdges The index of the first edge of each chunk.
+     * @param sources    Receives the index of the first endpoint of every edge.
+     * @param targets    Receives the index of the second endpoint of every edge.
+     * @throws IOException If the indexing is interrupted.
+     */
+    private void indexDense(ForkJoinPool pool, List<Chunk> chunks, int maxId, int[] firstEdges, int[] sources,
+                            int[] targets) throws IOException {
+        // Threads that mark the same id write the same value, so the marks need no synchronization.
+        int[] indices = new int[maxId + 1];
+        List<Callable<Void>> markers = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            markers.add(() -> {
+                for (int i = 0; i < chunk._size; i++) {
+                    indices[(int) chunk._endpoints[i]] = 1;
+                }
+                return null;
+            });
+        }
+        runAll(pool, markers);
+
+        int vertexCount = 0;
+        for (int id = 0; id <= maxId; id++) {
+            if (indices[id] != 0) {
+                vertexCount++;
+            }
+        }
+        _ids = new long[vertexCount];
+        vertexCount = 0;
+        for (int id = 0; id <= maxId; id++) {
+            if (indices[id] != 0) {
+                _ids[vertexCount] = id;
+                indices[id] = vertexCount++;
+            }
+        }
+
+        List<Callable<Void>> mappers = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            int firstEdge = firstEdges[i];
+            mappers.add(() -> {
+                for (int j = 0; j < chunk._size / 2; j++) {
+                    sources[firstEdge + j] = indices[(int) chunk._endpoints[2 * j]];
+                    targets[firstEdge + j] = indices[(int) chunk._endpoints[2 * j + 1]];
+                }
+                chunk._endpoints = null;
+                return null;
+            });
+        }
+        runAll(pool, mappers);
+    }
+
+    /**
+     * Indexes the ids through a hash map, in the order they first appear in the file.
+     *
+     * @param chunks     The parsed chunks.
+     * @param firstEdges The index of the first edge of each chunk.
+     * @param sources    Receives the index of the first endpoint of every edge.
+     * @param targets    Receives the index of the second endpoint of every edge.
+     */
+    private void indexSparse(List<Chunk> chunks, int[] firstEdges, int[] sources, int[] targets) {
+        LongIntHashMap indices = new LongIntHashMap(sources.length / 4);
+        long[] ids = new long[16];
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            for (int j = 0; j < chunk._size; j++) {
+                long id = chunk._endpoints[j];
+                int index = indices.putIfAbsent(id, indices.size());
+                if (index == LongIntHashMap.MISSING) {
+                    index = indices.size() - 1;
+                    if (index == ids.length) {
+                        ids = Arrays.copyOf(ids, 2 * ids.length);
+                    }
+                    ids[index] = id;
+                }
+                if (j % 2 == 0) {
+                    sources[firstEdges[i] + j / 2] = index;
+                } else {
+                    targets[firstEdges[i] + j / 2] = index;
+                }
+            }
+            chunk._endpoints = null;
+        }
+        _ids = Arrays.copyOf(ids, indices.size());
+    }
+
+    /**
+     * Parses the lines of a text edge list that start in the given range of the file.
+     *
+     * @param path    The file, for error messages.
+     * @param channel The channel of the file.
+     * @param start   The first byte of the range.
+     * @param end     The byte after the range.
+     * @param size    The size of the file.
+     * @return The ids of the endpoints of the edges.
+     * @throws IOException If the range cannot be read or is not valid.
+     */
+    private static Chunk parseText(Path path, FileChannel channel, long start, long end, long size)
+            throws IOException {
+        // The byte before the range tells whether the range starts with a new line. The last line may run past it.
+        long from = Math.max(0, start - 1);
+        long to = Math.min(size, end + MAX_LINE_LENGTH);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        int limit = buffer.limit();
+        int last = (int) (end - from);
+        boolean truncated = to < size;
+
+        int pos = 0;
+        if (start > 0) {
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+
+        Chunk chunk = new Chunk((int) ((end - start) / 8) + 16);
+        while (pos < last) {
+            while (pos < limit && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t')) {
+                pos++;
+            }
+            byte b = pos < limit ? buffer.get(pos) : (byte) '\n';
+            if (b != '\n' && b != '\r' && b != '#' && b != '%') {
+                // Read the two ids.
+                for (int k = 0; k < 2; k++) {
+                    while (pos < limit && (buffer.get(pos) == ' ' || buffer.get(pos) == '\t')) {
+                        pos++;
+                    }
+                    long id = 0;
+                    int digits = 0;
+                    while (pos < limit && buffer.get(pos) >= '0' && buffer.get(pos) <= '9') {
+                        if (id > (Long.MAX_VALUE - 9) / 10) {
+                            throw new IOException(path + ": an id at byte " + (from + pos) + " is too large.");
+                        }
+                        id = 10 * id + (buffer.get(pos++) - '0');
+                        digits++;
+                    }
+                    if (digits == 0) {
+                        if (pos < limit && buffer.get(pos) == '-') {
+                            throw new IOException(path + ": the id at byte " + (from + pos) + " is negative.");
+                        }
+                        if (pos == limit && truncated) {
+                            throw new IOException(path + ": a line before byte " + (from + pos) + " is longer than "
+                                                          + MAX_LINE_LENGTH + " bytes.");
+                        }
+                        throw new IOException(path + ": expected an id at byte " + (from + pos) + ".");
+                    }
+                    chunk.add(id);
+                }
+            }
+
+            // Skip the rest of the line.
+            while (pos < limit && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            if (pos == limit && truncated) {
+                throw new IOException(path + ": a line before byte " + (from + pos) + " is longer than "
+                                              + MAX_LINE_LENGTH + " bytes.");
+            }
+            pos++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses the edges of a binary edge list in the given range of the file.
+     *
+     * @param channel The channel of the file.
+     * @param start   The first byte of the range, a multiple of 8.
+     * @param end     The byte after the range, a multiple of 8.
+     * @return The ids of the endpoints of the edges.
+     * @throws IOException If the range cannot be read.
+     */
+    private static Chunk parseBinary(FileChannel channel, long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int count = (int) ((end - start) / 4);
+        Chunk chunk = new Chunk(count);
+        for (int i = 0; i < count; i++) {
+            chunk.add(Integer.toUnsignedLong(buffer.getInt(4 * i)));
+        }
+        return chunk;
+    }
+
+    /**
+     * Runs tasks on the pool and waits for all of them.
+     *
+     * @param pool  The pool.
+     * @param tasks The tasks.
+     * @param <T>   The result type of the tasks.
+     * @return The results of the tasks, in the same order.
+     * @throws IOException If a task failed with an IOException, or the wait is interrupted.
+     */
+    private static <T> List<T> runAll(ForkJoinPool pool, List<Callable<T>> tasks) throws IOException {
+        List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(pool.submit(task));
+        }
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading the edge list.");
+        } catch (ExecutionException e) {
+            // The pool wraps the exceptions of the tasks, and may wrap them again when it rethrows them.
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * The ids of the endpoints of the edges parsed from a chunk of the file: the two ids of every edge, one after
+     * the other.
+     */
+    private static class Chunk {
+        private long[] _endpoints;
+        private int _size;
+
+        // The largest id of the chunk, or -1 if it has none.
+        private long _maxId = -1;
+
+        Chunk(int capacity) {
+            _endpoints = new long[Math.max(capacity, 2)];
+        }
+
+        void add(long id) {
+            if (_size == _endpoints.length) {
+                _endpoints = Arrays.copyOf(_endpoints, 2 * _endpoints.length);
+            }
+            _endpoints[_size++] = id;
+            _maxId = Math.max(_maxId, id);
+        }
+    }
+}
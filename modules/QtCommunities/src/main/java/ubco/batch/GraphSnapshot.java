@@ -0,0 +1,315 @@
+package ubco.batch;
+
+import ubco.structure.CsrGraph;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A graph saved in a binary file that loads far faster than it parses: the compressed adjacency with its edge ids,
+ * the id of every vertex, and optionally the number of triangles of every edge. A snapshot is written once, for
+ * example by the BatchRunner, and then loaded by memory mapping the file and copying each section in bulk into the
+ * arrays of the graph. Nothing is parsed, sorted or counted again.
+ * <p>
+ * The file is little-endian. It starts with a header of HEADER_SIZE bytes:
+ * <ul>
+ * <li>the 8 bytes of MAGIC,</li>
+ * <li>the version of the format, an int,</li>
+ * <li>the flags, an int, where HAS_TRIANGLES tells whether the triangle section is present,</li>
+ * <li>the number of vertices and the number of edges, two ints,</li>
+ * <li>zeros up to HEADER_SIZE.</li>
+ * </ul>
+ * The sections follow, each padded to a multiple of 8 bytes: the adjacency offsets, as vertex count + 1 ints; the
+ * neighbors and the edge ids, as 2 * edge count ints each; the vertex ids, as vertex count non-negative longs; and
+ * the triangle counts, as edge count ints.
+ *
+ * @author Zach Holland
+ */
+public class GraphSnapshot {
+    // The first bytes of every snapshot.
+    public static final byte[] MAGIC = "QTMGRAPH".getBytes(StandardCharsets.US_ASCII);
+
+    // The version of the format written. Snapshots of a later version are refused.
+    public static final int VERSION = 1;
+
+    // The flag that tells whether the triangle counts are saved.
+    public static final int HAS_TRIANGLES = 1;
+
+    // The size of the header, in bytes.
+    public static final int HEADER_SIZE = 32;
+
+    // The largest number of bytes mapped or written at once.
+    private static final int BLOCK_SIZE = 1 << 30;
+
+    private final CsrGraph _graph;
+    private final long[] _ids;
+    private final int[] _triangles;
+
+    /**
+     * Creates a snapshot of a graph.
+     *
+     * @param graph     The graph.
+     * @param ids       The id of each vertex, indexed by vertex index. The ids cannot be negative.
+     * @param triangles The number of triangles of each edge, indexed by edge id, or null to leave them out.
+     */
+    public GraphSnapshot(CsrGraph graph, long[] ids, int[] triangles) {
+        if (ids.length != graph.getVertexCount()) {
+            throw new IllegalArgumentException("There must be an id for every vertex.");
+        }
+        if (triangles != null && triangles.length != graph.getEdgeCount()) {
+            throw new IllegalArgumentException("There must be a triangle count for every edge.");
+        }
+        if (hasNegative(ids)) {
+            throw new IllegalArgumentException("The vertex ids cannot be negative.");
+        }
+        _graph = graph;
+        _ids = ids;
+        _triangles = triangles;
+    }
+
+    public CsrGraph getGraph() {
+        return _graph;
+    }
+
+    /**
+     * Returns the ids of the vertices.
+     *
+     * @return The id of each vertex, indexed by vertex index.
+     */
+    public long[] getIds() {
+        return _ids;
+    }
+
+    /**
+     * Returns the triangle counts saved with the graph.
+     *
+     * @return The number of triangles of each edge, indexed by edge id, or null if they were not saved.
+     */
+    public int[] getTriangles() {
+        return _triangles;
+    }
+
+    /**
+     * Checks whether a file starts like a snapshot.
+     *
+     * @param path The file.
+     * @return true if the file starts with MAGIC, and false otherwise.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(MAGIC.length);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Read until the magic is complete or the file ends.
+            }
+            return !magic.hasRemaining() && Arrays.equals(magic.array(), MAGIC);
+        }
+    }
+
+    /**
+     * Loads a snapshot.
+     *
+     * @param path The file to load.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read, or is not a snapshot of a version this class can read.
+     */
+    public static GraphSnapshot load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), HEADER_SIZE))
+                                       .order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            if (header.limit() < HEADER_SIZE || !Arrays.equals(read(header, magic), MAGIC)) {
+                throw new IOException(path + " is not a graph snapshot.");
+            }
+            int version = header.getInt();
+            if (version > VERSION) {
+                throw new IOException(path + " is a snapshot of version " + version + ", but only versions up to "
+                                              + VERSION + " can be read.");
+            }
+            int flags = header.getInt();
+            int vertexCount = header.getInt();
+            int edgeCount = header.getInt();
+            boolean hasTriangles = (flags & HAS_TRIANGLES) != 0;
+            if (vertexCount < 0 || edgeCount < 0 || edgeCount > Integer.MAX_VALUE / 2
+                    || channel.size() != size(vertexCount, edgeCount, hasTriangles)) {
+                throw new IOException(path + " is a truncated or corrupt graph snapshot.");
+            }
+
+            long position = HEADER_SIZE;
+            int[] offsets = new int[vertexCount + 1];
+            position = readInts(channel, position, offsets);
+            int[] neighbors = new int[2 * edgeCount];
+            position = readInts(channel, position, neighbors);
+            int[] edgeIds = new int[2 * edgeCount];
+            position = readInts(channel, position, edgeIds);
+            long[] ids = new long[vertexCount];
+            position = readLongs(channel, position, ids);
+            int[] triangles = null;
+            if (hasTriangles) {
+                triangles = new int[edgeCount];
+                readInts(channel, position, triangles);
+            }
+            if (offsets[vertexCount] != neighbors.length || hasNegative(ids)) {
+                throw new IOException(path + " is a corrupt graph snapshot.");
+            }
+            return new GraphSnapshot(new CsrGraph(offsets, neighbors, edgeIds), ids, triangles);
+        }
+    }
+
+    /**
+     * Writes the snapshot.
+     *
+     * @param path The file to write. It is replaced if it exists.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path path) throws IOException {
+        int n = _graph.getVertexCount();
+        int positions = 2 * _graph.getEdgeCount();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(_triangles != null ? HAS_TRIANGLES : 0);
+            buffer.putInt(n);
+            buffer.putInt(_graph.getEdgeCount());
+            pad(buffer, HEADER_SIZE);
+
+            for (int v = 0; v < n; v++) {
+                putInt(channel, buffer, _graph.adjacencyStart(v));
+            }
+            putInt(channel, buffer, positions);
+            pad(buffer, 8);
+            for (int p = 0; p < positions; p++) {
+                putInt(channel, buffer, _graph.getNeighbor(p));
+            }
+            pad(buffer, 8);
+            for (int p = 0; p < positions; p++) {
+                putInt(channel, buffer, _graph.getEdgeId(p));
+            }
+            pad(buffer, 8);
+            for (long id : _ids) {
+                if (buffer.remaining() < 8) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(id);
+            }
+            if (_triangles != null) {
+                for (int t : _triangles) {
+                    putInt(channel, buffer, t);
+                }
+                pad(buffer, 8);
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * Computes the size of a snapshot file.
+     *
+     * @param vertexCount  The number of vertices.
+     * @param edgeCount    The number of edges.
+     * @param hasTriangles Whether the triangle counts are saved.
+     * @return The size of the file, in bytes.
+     */
+    private static long size(int vertexCount, int edgeCount, boolean hasTriangles) {
+        long size = HEADER_SIZE;
+        size += padded(4L * (vertexCount + 1));
+        size += 2 * padded(8L * edgeCount);
+        size += 8L * vertexCount;
+        if (hasTriangles) {
+            size += padded(4L * edgeCount);
+        }
+        return size;
+    }
+
+    private static boolean hasNegative(long[] values) {
+        for (long value : values) {
+            if (value < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long padded(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static byte[] read(ByteBuffer buffer, byte[] bytes) {
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Copies a section of ints from the file, mapping it in blocks, since a mapping cannot exceed 2 GB.
+     *
+     * @param channel  The channel of the file.
+     * @param position The position of the section in the file.
+     * @param values   Receives the ints of the section.
+     * @return The position after the section, padded to 8 bytes.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long readInts(FileChannel channel, long position, int[] values) throws IOException {
+        int blockValues = BLOCK_SIZE / 4;
+        for (int start = 0; start < values.length; start += blockValues) {
+            int count = Math.min(blockValues, values.length - start);
+            channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * start, 4L * count)
+                   .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values, start, count);
+        }
+        return position + padded(4L * values.length);
+    }
+
+    /**
+     * Copies a section of longs from the file, mapping it in blocks.
+     *
+     * @param channel  The channel of the file.
+     * @param position The position of the section in the file.
+     * @param values   Receives the longs of the section.
+     * @return The position after the section.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long readLongs(FileChannel channel, long position, long[] values) throws IOException {
+        int blockValues = BLOCK_SIZE / 8;
+        for (int start = 0; start < values.length; start += blockValues) {
+            int count = Math.min(blockValues, values.length - start);
+            channel.map(FileChannel.MapMode.READ_ONLY, position + 8L * start, 8L * count)
+                   .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(values, start, count);
+        }
+        return position + 8L * values.length;
+    }
+
+    private static void putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+        if (buffer.remaining() < 4) {
+            flush(channel, buffer);
+        }
+        buffer.putInt(value);
+    }
+
+    /**
+     * Writes zeros until the number of bytes written is a multiple of the given alignment. The buffer is only
+     * flushed when full, so its position tells how far the file is from the alignment.
+     *
+     * @param buffer    The buffer.
+     * @param alignment The alignment, a power of two of at most 32.
+     */
+    private static void pad(ByteBuffer buffer, int alignment) {
+        while ((buffer.position() & (alignment - 1)) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,214 @@
+package ubco.structure;
+
+import java.util.Arrays;
+
+/**
+ * Represents an immutable, undirected graph in compressed sparse row form. Vertices are identified by the dense
+ * indices 0 to getVertexCount() - 1. The neighbors of a vertex v are stored, sorted ascending, in the positions
+ * adjacencyStart(v) to adjacencyEnd(v) - 1 of a single neighbor array, so every undirected edge occupies two
+ * adjacency positions. Both positions of an edge share its dense edge id, from 0 to getEdgeCount() - 1.
+ *
+ * @author Zach Holland
+ */
+public class CsrGraph {
+    // The first adjacency position of each vertex. The extra last entry is the total number of positions.
+    private final int[] _offsets;
+
+    // The neighbor stored at each adjacency position.
+    private final int[] _neighbors;
+
+    // The id of the edge stored at each adjacency position.
+    private final int[] _edgeIds;
+
+    /**
+     * Creates a graph from already built compressed sparse row arrays. The neighbors of every vertex must be sorted
+     * ascending, and every edge must be present in both directions.
+     *
+     * @param offsets   The first adjacency position of each vertex, followed by the total number of positions.
+     * @param neighbors The neighbor stored at each adjacency position.
+     */
+    public CsrGraph(int[] offsets, int[] neighbors) {
+        _offsets = offsets;
+        _neighbors = neighbors;
+        _edgeIds = new int[neighbors.length];
+
+        // Number the edges in the order of their smaller endpoint. Visiting the vertices in ascending order finds
+        // the position of an edge in the neighborhood of its larger endpoint in order too.
+        int vertexCount = offsets.length - 1;
+        int[] reverse = Arrays.copyOf(offsets, vertexCount);
+        int edgeId = 0;
+        for (int u = 0; u < vertexCount; u++) {
+            for (int p = offsets[u]; p < offsets[u + 1]; p++) {
+                int v = neighbors[p];
+                int q = reverse[v]++;
+                if (v > u) {
+                    _edgeIds[p] = edgeId;
+                    _edgeIds[q] = edgeId;
+                    edgeId++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a graph from compressed sparse row arrays whose edges are already numbered, as saved by a snapshot. The
+     * arrays are used as they are, without any check.
+     *
+     * @param offsets   The first adjacency position of each vertex, followed by the total number of positions.
+     * @param neighbors The neighbor stored at each adjacency position.
+     * @param edgeIds   The id of the edge stored at each adjacency position, numbered as the other constructor does.
+     */
+    public CsrGraph(int[] offsets, int[] neighbors, int[] edgeIds) {
+        _offsets = offsets;
+        _neighbors = neighbors;
+        _edgeIds = edgeIds;
+    }
+
+    /**
+     * Builds a graph from a list of undirected edges. Self loops and parallel edges are dropped.
+     *
+     * @param vertexCount The number of vertices.
+     * @param sources     The first endpoint of each edge.
+     * @param targets     The second endpoint of each edge.
+     * @param edgeCount   The number of edges to read from the endpoint arrays.
+     * @return The compressed graph.
+     */
+    public static CsrGraph fromEdgeList(int vertexCount, int[] sources, int[] targets, int edgeCount) {
+        // Count the number of adjacency positions needed by each vertex.
+        int[] offsets = new int[vertexCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            if (sources[i] != targets[i]) {
+                offsets[sources[i] + 1]++;
+                offsets[targets[i] + 1]++;
+            }
+        }
+        for (int v = 0; v < vertexCount; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+
+        // Place both directions of every edge.
+        int[] neighbors = new int[offsets[vertexCount]];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int i = 0; i < edgeCount; i++) {
+            int s = sources[i];
+            int t = targets[i];
+            if (s != t) {
+                neighbors[fill[s]++] = t;
+                neighbors[fill[t]++] = s;
+            }
+        }
+
+        // Sort every neighborhood and squeeze out the parallel edges.
+        int write = 0;
+        int start = 0;
+        for (int v = 0; v < vertexCount; v++) {
+            int end = offsets[v + 1];
+            Arrays.sort(neighbors, start, end);
+            offsets[v] = write;
+            for (int p = start; p < end; p++) {
+                if (p == start || neighbors[p] != neighbors[p - 1]) {
+                    neighbors[write++] = neighbors[p];
+                }
+            }
+            start = end;
+        }
+        offsets[vertexCount] = write;
+
+        return new CsrGraph(offsets, write == neighbors.length ? neighbors : Arrays.copyOf(neighbors, write));
+    }
+
+    public int getVertexCount() {
+        return _offsets.length - 1;
+    }
+
+    public int getEdgeCount() {
+        return _neighbors.length / 2;
+    }
+
+    /**
+     * Returns the number of neighbors of the given vertex.
+     *
+     * @param v The vertex.
+     * @return The degree of v.
+     */
+    public int degree(int v) {
+        return _offsets[v + 1] - _offsets[v];
+    }
+
+    /**
+     * Returns the first adjacency position of the given vertex.
+     *
+     * @param v The vertex.
+     * @return The position of the first neighbor of v.
+     */
+    public int adjacencyStart(int v) {
+        return _offsets[v];
+    }
+
+    /**
+     * Returns the adjacency position following the last neighbor of the given vertex.
+     *
+     * @param v The vertex.
+     * @return The position after the last neighbor of v.
+     */
+    public int adjacencyEnd(int v) {
+        return _offsets[v + 1];
+    }
+
+    /**
+     * Returns the neighbor stored at the given adjacency position.
+     *
+     * @param position The adjacency position.
+     * @return The neighbor at that position.
+     */
+    public int getNeighbor(int position) {
+        return _neighbors[position];
+    }
+
+    /**
+     * Returns the id of the edge stored at the given adjacency position.
+     *
+     * @param position The adjacency position.
+     * @return The id of the edge between the vertex owning the position and the neighbor at that position.
+     */
+    public int getEdgeId(int position) {
+        return _edgeIds[position];
+    }
+
+    /**
+     * Finds the id of the edge between the given vertices.
+     *
+     * @param u The first vertex.
+     * @param v The second vertex.
+     * @return The id of the edge 'u v', or -1 if they are not neighbors.
+     */
+    public int findEdgeId(int u, int v) {
+        // Search the smaller neighborhood.
+        int position = degree(u) <= degree(v) ? findEdge(u, v) : findEdge(v, u);
+        return position >= 0 ? _edgeIds[position] : -1;
+    }
+
+    /**
+     * Finds the adjacency position of v in the neighborhood of u.
+     *
+     * @param u The first vertex.
+     * @param v The second vertex.
+     * @return The position of v in the neighbors of u, or -1 if they are not neighbors.
+     */
+    public int findEdge(int u, int v) {
+        int position = Arrays.binarySearch(_neighbors, _offsets[u], _offsets[u + 1], v);
+        return position >= 0 ? position : -1;
+    }
+
+    /**
+     * Checks whether the given vertices are neighbors.
+     *
+     * @param u The first vertex.
+     * @param v The second vertex.
+     * @return true if there is an edge between u and v, and false otherwise.
+     */
+    public boolean isNeighbor(int u, int v) {
+        // Search the smaller neighborhood.
+        return degree(u) <= degree(v) ? findEdge(u, v) >= 0 : findEdge(v, u) >= 0;
+    }
+}
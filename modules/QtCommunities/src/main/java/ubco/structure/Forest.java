@@ -0,0 +1,181 @@
+package ubco.structure;
+
+import java.util.Arrays;
+
+/**
+ * Represents the tree built by the QuasiThresholdMover algorithm: a forest whose trees hang below a single universal
+ * root. The vertices are the dense indices 0 to getVertexCount() - 1, and the root is the index getVertexCount().
+ * <p>
+ * The forest is stored as a struct of arrays indexed by vertex, so a vertex costs a handful of ints rather than an
+ * object. The children of a vertex are kept in an intrusive, doubly linked list: the vertex points to its first
+ * child, and every child points to its previous and next siblings. Changing the parent of a vertex takes constant
+ * time, regardless of how many children either parent has. Depths are not stored, so moving a subtree does not
+ * touch its vertices.
+ *
+ * @author Zach Holland
+ */
+public class Forest {
+    // Stands for a missing vertex in the links.
+    public static final int NONE = -1;
+
+    // The parent of each vertex, or NONE for a detached vertex. The parent of the root is the root itself.
+    private final int[] _parents;
+
+    // The first child of each vertex, or NONE.
+    private final int[] _firstChildren;
+
+    // The previous and next sibling of each vertex, or NONE.
+    private final int[] _prevSiblings;
+    private final int[] _nextSiblings;
+
+    // The number of vertices in the subtree rooted at each vertex, including itself.
+    private final int[] _subtreeSizes;
+
+    /**
+     * Creates a forest of the given number of vertices, all of them detached, below a universal root.
+     *
+     * @param vertexCount The number of vertices, not counting the root.
+     */
+    public Forest(int vertexCount) {
+        _parents = new int[vertexCount + 1];
+        _firstChildren = new int[vertexCount + 1];
+        _prevSiblings = new int[vertexCount + 1];
+        _nextSiblings = new int[vertexCount + 1];
+        _subtreeSizes = new int[vertexCount + 1];
+        clear();
+    }
+
+    /**
+     * Detaches every vertex, leaving the root alone.
+     */
+    public void clear() {
+        Arrays.fill(_parents, NONE);
+        Arrays.fill(_firstChildren, NONE);
+        Arrays.fill(_prevSiblings, NONE);
+        Arrays.fill(_nextSiblings, NONE);
+        Arrays.fill(_subtreeSizes, 1);
+        _parents[getRoot()] = getRoot();
+    }
+
+    public int getVertexCount() {
+        return _parents.length - 1;
+    }
+
+    public int getRoot() {
+        return _parents.length - 1;
+    }
+
+    public int getParent(int v) {
+        return _parents[v];
+    }
+
+    public int getFirstChild(int v) {
+        return _firstChildren[v];
+    }
+
+    public int getNextSibling(int v) {
+        return _nextSiblings[v];
+    }
+
+    public boolean hasChildren(int v) {
+        return _firstChildren[v] != NONE;
+    }
+
+    public int getSubtreeSize(int v) {
+        return _subtreeSizes[v];
+    }
+
+    public void setSubtreeSize(int v, int subtreeSize) {
+        _subtreeSizes[v] = subtreeSize;
+    }
+
+    /**
+     * Changes the parent of the given vertex. The vertex becomes the first child of its new parent. Subtree sizes
+     * are left unchanged.
+     *
+     * @param child     The vertex to change the parent of. It must not be the root.
+     * @param newParent The new parent vertex, or NONE to detach the vertex.
+     */
+    public void setParent(int child, int newParent) {
+        // Unlink the child from its old parent.
+        int oldParent = _parents[child];
+        if (oldParent != NONE) {
+            if (_prevSiblings[child] != NONE) {
+                _nextSiblings[_prevSiblings[child]] = _nextSiblings[child];
+            } else {
+                _firstChildren[oldParent] = _nextSiblings[child];
+            }
+            if (_nextSiblings[child] != NONE) {
+                _prevSiblings[_nextSiblings[child]] = _prevSiblings[child];
+            }
+        }
+
+        // Link it in front of the children of its new parent.
+        _parents[child] = newParent;
+        _prevSiblings[child] = NONE;
+        _nextSiblings[child] = NONE;
+        if (newParent != NONE) {
+            _nextSiblings[child] = _firstChildren[newParent];
+            if (_firstChildren[newParent] != NONE) {
+                _prevSiblings[_firstChildren[newParent]] = child;
+            }
+            _firstChildren[newParent] = child;
+        }
+    }
+
+    /**
+     * Adjusts the subtree sizes of the given vertex and all its ancestors, excluding the root whose size is never
+     * used.
+     *
+     * @param v          The lowest vertex whose subtree size needs to be adjusted.
+     * @param adjustment The amount by which to adjust the subtree sizes.
+     */
+    public void adjustSubtreeSizes(int v, int adjustment) {
+        for (int a = v; a != getRoot(); a = _parents[a]) {
+            _subtreeSizes[a] += adjustment;
+        }
+    }
+
+    /**
+     * Compute the subtree sizes of all the vertices attached to the root. The forest is walked depth-first through
+     * the parent and sibling links, so it takes no stack, however deep the trees are.
+     */
+    public void computeSubtreeSizes() {
+        int root = getRoot();
+        int v = root;
+        while (v != NONE) {
+            _subtreeSizes[v] = 1;
+            if (hasChildren(v)) {
+                v = _firstChildren[v];
+                continue;
+            }
+            // Leave v and every ancestor whose last child has been left, adding their sizes to their parents.
+            while (v != root && _nextSiblings[v] == NONE) {
+                _subtreeSizes[_parents[v]] += _subtreeSizes[v];
+                v = _parents[v];
+            }
+            if (v != root) {
+                _subtreeSizes[_parents[v]] += _subtreeSizes[v];
+            }
+            v = v == root ? NONE : _nextSiblings[v];
+        }
+    }
+
+    /**
+     * Returns the vertex following the given one in a depth-first walk of the forest from the root. The walk only
+     * follows the parent and sibling links, so it takes no stack, however deep the trees are.
+     *
+     * @param v The current vertex of the walk.
+     * @return The next vertex of the walk, or NONE once every vertex attached to the root has been visited.
+     */
+    public int nextInPreorder(int v) {
+        if (hasChildren(v)) {
+            return _firstChildren[v];
+        }
+        int root = getRoot();
+        while (v != root && _nextSiblings[v] == NONE) {
+            v = _parents[v];
+        }
+        return v == root ? NONE : _nextSiblings[v];
+    }
+}
@@ -0,0 +1,63 @@
+package ubco.structure;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Maps the user-facing ids of the vertices of a graph to their dense indices, and back. The algorithm only works on
+ * the indices; the ids are needed to read a graph in and to hand the result back.
+ *
+ * @param <V> The id type of the vertices.
+ * @author Zach Holland
+ */
+public class VertexIds<V> {
+    // The id of each vertex, indexed by vertex index.
+    private final List<V> _ids;
+
+    // The index of each id. Only built once an index is looked up, since most runs never need it.
+    private Map<V, Integer> _indices;
+
+    /**
+     * Creates the map for the given ids. A random access list is used as it is, so that a compact view of the ids,
+     * like one over a primitive array, stays compact. It must not change afterwards. Other lists are copied.
+     *
+     * @param ids The id of each vertex, indexed by vertex index. The ids must be distinct.
+     */
+    public VertexIds(List<V> ids) {
+        _ids = ids instanceof RandomAccess ? ids : new ArrayList<>(ids);
+    }
+
+    public int size() {
+        return _ids.size();
+    }
+
+    /**
+     * Returns the id of the vertex of the given index.
+     *
+     * @param index The index of the vertex.
+     * @return The id of the vertex.
+     */
+    public V getId(int index) {
+        return _ids.get(index);
+    }
+
+    /**
+     * Returns the index of the vertex of the given id.
+     *
+     * @param id The id of the vertex.
+     * @return The index of the vertex, or -1 if there is no vertex with that id.
+     */
+    public synchronized int getIndex(V id) {
+        if (_indices == null) {
+            _indices = new HashMap<>(2 * _ids.size());
+            for (int i = 0; i < _ids.size(); i++) {
+                _indices.put(_ids.get(i), i);
+            }
+        }
+        Integer index = _indices.get(id);
+        return index != null ? index : -1;
+    }
+}
@@ -0,0 +1,76 @@
+package ubco.utility;
+
+/**
+ * Emits the JDK Flight Recorder events of the plugin: one event per phase of a run, and one per iteration of the
+ * optimization, with their durations and counters. The events show up in any JFR recording, for example one started
+ * with -XX:StartFlightRecording, under the "QT Communities" category.
+ * <p>
+ * An event is begun by a call that returns a recording handle, and committed by passing the handle back. The handle
+ * is null when the event is not recorded: when the JVM has no JFR, or no recording enables the event. The commit
+ * calls then return at once, so the events cost nothing unless they are recorded.
+ *
+ * @author Zach Holland
+ */
+public final class FlightRecorderEvents {
+    // Whether the JVM has JFR. Without it, the event classes cannot be loaded, so they are never touched.
+    private static final boolean AVAILABLE = isAvailable();
+
+    private FlightRecorderEvents() {
+    }
+
+    private static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Begins the event of a phase.
+     *
+     * @return The recording handle of the event, or null if it is not recorded.
+     */
+    public static Object beginPhase() {
+        return AVAILABLE ? JfrEvents.beginPhase() : null;
+    }
+
+    /**
+     * Ends and commits the event of a phase.
+     *
+     * @param recording   The handle returned by beginPhase.
+     * @param phase       The name of the phase.
+     * @param vertexCount The number of vertices of the graph the phase worked on.
+     * @param edgeCount   The number of edges of the graph the phase worked on.
+     */
+    public static void commitPhase(Object recording, String phase, int vertexCount, long edgeCount) {
+        if (recording != null) {
+            JfrEvents.commitPhase(recording, phase, vertexCount, edgeCount);
+        }
+    }
+
+    /**
+     * Begins the event of an iteration.
+     *
+     * @return The recording handle of the event, or null if it is not recorded.
+     */
+    public static Object beginIteration() {
+        return AVAILABLE ? JfrEvents.beginIteration() : null;
+    }
+
+    /**
+     * Ends and commits the event of an iteration.
+     *
+     * @param recording        The handle returned by beginIteration.
+     * @param iteration        The index of the iteration, from 0.
+     * @param verticesExamined The number of vertices the iteration examined.
+     * @param moves            The number of vertices that changed position.
+     * @param edits            The number of edits after the iteration.
+     */
+    public static void commitIteration(Object recording, int iteration, int verticesExamined, int moves, long edits) {
+        if (recording != null) {
+            JfrEvents.commitIteration(recording, iteration, verticesExamined, moves, edits);
+        }
+    }
+}
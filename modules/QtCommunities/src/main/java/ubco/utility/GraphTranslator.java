@@ -1,100 +1,204 @@
 package ubco.utility;
 
-import edu.uci.ics.jung.graph.Graph;
-import edu.uci.ics.jung.graph.SparseGraph;
-import edu.uci.ics.jung.graph.util.Pair;
 import org.gephi.graph.api.Node;
 import org.gephi.io.importer.api.ContainerLoader;
 import org.gephi.io.importer.api.EdgeDraft;
+import org.gephi.io.importer.api.ElementDraft;
 import org.gephi.io.importer.api.NodeDraft;
-import ubco.structure.Edge;
-import ubco.structure.Vertex;
+import ubco.algorithm.QtGraphConsumer;
+import ubco.algorithm.QtmMetrics;
+import ubco.algorithm.QuasiThresholdMover;
+import ubco.structure.CsrGraph;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.function.Function;
 
 /**
- * Utility class that translates a graph from the gephi format to jung and vice versa.
+ * Utility class that reads a graph from the gephi format into the algorithm, and writes its result back.
  *
  * @author Zach Holland
  */
 public class GraphTranslator {
+    // The node column that holds the planted community of each node.
+    public static final String COMMUNITY = "community";
+
     /**
-     * Translates a graph in the Gephi format to a JUNG graph.
+     * Reads a graph in the Gephi format into a QuasiThresholdMover. The nodes are indexed through their store ids,
+     * and the edges are copied once, straight into the compressed adjacency of the algorithm. The vertex ids are the
+     * store ids, which are distinct whatever the type of the node ids; getNodeIds gives the node id of each. Self
+     * loops and parallel edges are dropped, and edge directions are ignored.
      *
-     * @param gephiGraph The Gephi graph to transform.
-     * @return The JUNG graph.
+     * @param gephiGraph The Gephi graph to read. It should be read locked by the caller.
+     * @return A QuasiThresholdMover over the Gephi graph, whose vertex ids are the Gephi node store ids.
      */
-    public static Graph<Vertex<Integer>, Edge<String>> gephiToJung(org.gephi.graph.api.Graph gephiGraph) {
-        Graph<Vertex<Integer>, Edge<String>> graph = new SparseGraph<>();
-
-        // Create nodes
-        Map<Node, Vertex<Integer>> nodes = new HashMap<>();
-        for (Node n : gephiGraph.getNodes()) {
-            Vertex<Integer> v = new Vertex<>(Integer.valueOf((String) n.getId()));
-            nodes.put(n, v);
-            graph.addVertex(v);
+    public static QuasiThresholdMover<Integer> gephiToQuasiThresholdMover(org.gephi.graph.api.Graph gephiGraph) {
+        PhaseTimer timer = PhaseTimer.start(QtmMetrics.Phase.READING);
+        Node[] nodes = gephiGraph.getNodes().toArray();
+
+        // Store ids are small and dense, but may have holes after nodes were removed, or when the graph is a view.
+        int[] indices = new int[maxStoreId(nodes) + 1];
+        int[] storeIds = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            storeIds[i] = nodes[i].getStoreId();
+            indices[storeIds[i]] = i;
         }
 
-        // Create edges
+        // Read the endpoints of every edge.
+        int[] sources = new int[gephiGraph.getEdgeCount()];
+        int[] targets = new int[sources.length];
+        int edgeCount = 0;
         for (org.gephi.graph.api.Edge e : gephiGraph.getEdges()) {
-            Node n1 = e.getSource();
-            Node n2 = e.getTarget();
-            Vertex<Integer> v1 = nodes.get(n1);
-            Vertex<Integer> v2 = nodes.get(n2);
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, 2 * edgeCount + 1);
+                targets = Arrays.copyOf(targets, sources.length);
+            }
+            sources[edgeCount] = indices[e.getSource().getStoreId()];
+            targets[edgeCount] = indices[e.getTarget().getStoreId()];
+            edgeCount++;
+        }
+
+        // The universal root never appears in the result, so it needs no id.
+        CsrGraph graph = CsrGraph.fromEdgeList(nodes.length, sources, targets, edgeCount);
+        QuasiThresholdMover<Integer> qtm = new QuasiThresholdMover<>(graph, new StoreIdList(storeIds), null);
+        timer.stop(qtm.getMetrics(), nodes.length, graph.getEdgeCount());
+        return qtm;
+    }
+
+    /**
+     * Reads the node ids of a graph in the Gephi format, to write the result of gephiToQuasiThresholdMover with.
+     * The ids are kept as they are, so they are only turned into strings once the result is written.
+     *
+     * @param gephiGraph The Gephi graph to read. It should be read locked by the caller.
+     * @return The id of every node, indexed by store id.
+     */
+    public static Object[] getNodeIds(org.gephi.graph.api.Graph gephiGraph) {
+        Node[] nodes = gephiGraph.getNodes().toArray();
+        Object[] nodeIds = new Object[maxStoreId(nodes) + 1];
+        for (Node n : nodes) {
+            nodeIds[n.getStoreId()] = n.getId();
+        }
+        return nodeIds;
+    }
 
-            graph.addEdge(new Edge<>(v1.getId() + "-" + v2.getId()), v1, v2);
+    private static int maxStoreId(Node[] nodes) {
+        int maxStoreId = -1;
+        for (Node n : nodes) {
+            maxStoreId = Math.max(maxStoreId, n.getStoreId());
         }
+        return maxStoreId;
+    }
 
-        return graph;
+    /**
+     * Writes the result of a QuasiThresholdMover into a Gephi container. The edges are streamed from the tree of
+     * the algorithm straight into the container, without building the result graph first.
+     *
+     * @param container              The Gephi container to place the graph.
+     * @param qtm                    The algorithm whose tree to write. Its vertex ids become the node ids.
+     * @param showTransitiveClosures true builds the entire edited graph, false builds only the tree skeleton.
+     * @param <V>                    The id type of the vertices.
+     */
+    public static <V extends Comparable<V>> void writeToContainer(ContainerLoader container,
+                                                                  QuasiThresholdMover<V> qtm,
+                                                                  boolean showTransitiveClosures) {
+        writeToContainer(container, qtm, showTransitiveClosures, V::toString);
     }
 
     /**
-     * Translates a graph in the JUNG format to a Gephi graph.
+     * Writes the result of gephiToQuasiThresholdMover into a Gephi container, giving every node its id in the
+     * Gephi graph that was read.
      *
      * @param container              The Gephi container to place the graph.
-     * @param gephiGraph             The Gephi graph.
-     * @param jungGraph              The JUNG graph to build in Gephi.
+     * @param qtm                    The algorithm whose tree to write. Its vertex ids are Gephi node store ids.
      * @param showTransitiveClosures true builds the entire edited graph, false builds only the tree skeleton.
+     * @param nodeIds                The id of every node, indexed by store id, as returned by getNodeIds.
      */
-    public static void jungToGephi(ContainerLoader container,
-                                   org.gephi.graph.api.Graph gephiGraph,
-                                   Graph<Integer, String> jungGraph,
-                                   boolean showTransitiveClosures) {
-        // Create nodes
-        Map<Integer, NodeDraft> nodes = new HashMap<>();
-        jungGraph.getVertices()
-                .stream()
-                .filter(v -> v != Integer.MAX_VALUE)
-                .forEach(v -> {
-                    NodeDraft nd = container.getNode(v.toString());
-                    nd.setLabel(v.toString());
-                    nodes.put(v, nd);
-                    container.addNode(nd);
-                });
-
-        // Create edges
-        // Choice depends on if entire edited graph is to be displayed or just the tree skeleton
-        if (showTransitiveClosures) {
-            jungGraph.getEdges().forEach(e -> {
-                EdgeDraft ed = container.factory().newEdgeDraft();
-                Pair<Integer> endPoints = jungGraph.getEndpoints(e);
-                if (endPoints.getFirst() != Integer.MAX_VALUE && endPoints.getSecond() != Integer.MAX_VALUE) {
-                    ed.setSource(nodes.get(endPoints.getFirst()));
-                    ed.setTarget(nodes.get(endPoints.getSecond()));
-                    container.addEdge(ed);
-                }
-            });
-        } else {
-            jungGraph.getEdges()
-                    .stream()
-                    .filter(e -> jungGraph.getSource(e) != Integer.MAX_VALUE)
-                    .forEach(e -> {
-                        EdgeDraft ed = container.factory().newEdgeDraft();
-                        ed.setSource(nodes.get(jungGraph.getSource(e)));
-                        ed.setTarget(nodes.get(jungGraph.getDest(e)));
-                        container.addEdge(ed);
-                    });
+    public static void writeToContainer(ContainerLoader container,
+                                        QuasiThresholdMover<Integer> qtm,
+                                        boolean showTransitiveClosures,
+                                        Object[] nodeIds) {
+        writeToContainer(container, qtm, showTransitiveClosures, storeId -> String.valueOf(nodeIds[storeId]));
+    }
+
+    private static <V extends Comparable<V>> void writeToContainer(ContainerLoader container,
+                                                                   QuasiThresholdMover<V> qtm,
+                                                                   boolean showTransitiveClosures,
+                                                                   Function<V, String> nodeId) {
+        // The node of each vertex, indexed by vertex index.
+        NodeDraft[] nodes = new NodeDraft[qtm.getVertexCount()];
+        ElementDraft.Factory factory = container.factory();
+        qtm.writeQtGraph(showTransitiveClosures, new QtGraphConsumer<V>() {
+            @Override
+            public void addVertex(int v, V id) {
+                String label = nodeId.apply(id);
+                NodeDraft nd = factory.newNodeDraft(label);
+                nd.setLabel(label);
+                nodes[v] = nd;
+                container.addNode(nd);
+            }
+
+            @Override
+            public void addEdge(int ancestor, int v) {
+                EdgeDraft ed = factory.newEdgeDraft();
+                ed.setSource(nodes[ancestor]);
+                ed.setTarget(nodes[v]);
+                container.addEdge(ed);
+            }
+        });
+    }
+
+    /**
+     * Generates a planted quasi-threshold graph into a Gephi container. The edges are streamed from the generator
+     * straight into the container, and the planted community of every node is stored in the COMMUNITY column.
+     *
+     * @param container The Gephi container to place the graph.
+     * @param planted   The generator of the graph. Its vertex indices become the node ids.
+     * @return true if the whole graph was written, false if the progress monitor of the generator stopped it.
+     */
+    public static boolean writeToContainer(ContainerLoader container, PlantedQtGraph planted) {
+        // The node of each vertex, indexed by vertex index.
+        NodeDraft[] nodes = new NodeDraft[planted.getVertexCount()];
+        ElementDraft.Factory factory = container.factory();
+        container.addNodeColumn(COMMUNITY, Integer.class);
+        return planted.write(new PlantedGraphConsumer() {
+            @Override
+            public void addVertex(int v, int community) {
+                NodeDraft nd = factory.newNodeDraft(String.valueOf(v));
+                nd.setLabel(String.valueOf(v));
+                nd.setValue(COMMUNITY, community);
+                nodes[v] = nd;
+                container.addNode(nd);
+            }
+
+            @Override
+            public void addEdge(int u, int v) {
+                EdgeDraft ed = factory.newEdgeDraft();
+                ed.setSource(nodes[u]);
+                ed.setTarget(nodes[v]);
+                container.addEdge(ed);
+            }
+        });
+    }
+
+    /**
+     * A read-only view of the store ids of the nodes as a list, so that they are not boxed all at once.
+     */
+    private static class StoreIdList extends AbstractList<Integer> implements RandomAccess {
+        private final int[] _storeIds;
+
+        StoreIdList(int[] storeIds) {
+            _storeIds = storeIds;
+        }
+
+        @Override
+        public Integer get(int index) {
+            return _storeIds[index];
+        }
+
+        @Override
+        public int size() {
+            return _storeIds.length;
         }
     }
 }
@@ -0,0 +1,77 @@
+package ubco.utility;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints. Clearing the list keeps its capacity, so a list that is reused does not
+ * allocate once it has grown to the largest size it is needed for.
+ *
+ * @author Zach Holland
+ */
+public class IntArrayList {
+    // The elements of the list, followed by unused capacity.
+    private int[] _items;
+
+    // The number of elements in the list.
+    private int _size;
+
+    /**
+     * Creates an empty list.
+     */
+    public IntArrayList() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty list with the given initial capacity.
+     *
+     * @param capacity The number of elements the list can hold before it grows.
+     */
+    public IntArrayList(int capacity) {
+        _items = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Appends an element to the end of the list.
+     *
+     * @param item The element to append.
+     */
+    public void add(int item) {
+        if (_size == _items.length) {
+            _items = Arrays.copyOf(_items, 2 * _items.length);
+        }
+        _items[_size++] = item;
+    }
+
+    /**
+     * Removes the last element of the list.
+     *
+     * @return The removed element.
+     */
+    public int removeLast() {
+        return _items[--_size];
+    }
+
+    public int get(int index) {
+        return _items[index];
+    }
+
+    public void set(int index, int item) {
+        _items[index] = item;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    public boolean isEmpty() {
+        return _size == 0;
+    }
+
+    /**
+     * Removes all the elements, keeping the capacity.
+     */
+    public void clear() {
+        _size = 0;
+    }
+}
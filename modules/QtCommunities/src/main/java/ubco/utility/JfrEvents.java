@@ -0,0 +1,95 @@
+package ubco.utility;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The JDK Flight Recorder events of the plugin. This is the only class that refers to the JFR API, and it is only
+ * loaded once FlightRecorderEvents has found that the JVM has JFR. Compiling it needs JDK 8u262 or later, or JDK 11
+ * or later, which the build enforces; the plugin still runs on older JVMs, without the events.
+ *
+ * @author Zach Holland
+ * @see FlightRecorderEvents
+ */
+class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    @Name("ubco.QtmPhase")
+    @Label("QTM Phase")
+    @Category("QT Communities")
+    @Description("A phase of the Quasi-Threshold Mover algorithm")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Vertices")
+        int vertexCount;
+
+        @Label("Edges")
+        long edgeCount;
+    }
+
+    @Name("ubco.QtmIteration")
+    @Label("QTM Iteration")
+    @Category("QT Communities")
+    @Description("An iteration of the Quasi-Threshold Mover algorithm")
+    static class IterationEvent extends Event {
+        @Label("Iteration")
+        int iteration;
+
+        @Label("Vertices Examined")
+        int verticesExamined;
+
+        @Label("Moves")
+        int moves;
+
+        @Label("Edits")
+        long edits;
+    }
+
+    static Object beginPhase() {
+        PhaseEvent event = new PhaseEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commitPhase(Object recording, String phase, int vertexCount, long edgeCount) {
+        PhaseEvent event = (PhaseEvent) recording;
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.vertexCount = vertexCount;
+            event.edgeCount = edgeCount;
+            event.commit();
+        }
+    }
+
+    static Object beginIteration() {
+        IterationEvent event = new IterationEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commitIteration(Object recording, int iteration, int verticesExamined, int moves, long edits) {
+        IterationEvent event = (IterationEvent) recording;
+        event.end();
+        if (event.shouldCommit()) {
+            event.iteration = iteration;
+            event.verticesExamined = verticesExamined;
+            event.moves = moves;
+            event.edits = edits;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ubco.utility;
+
+/**
+ * A hash map from primitive longs to primitive ints, with open addressing and linear probing. A key and its value
+ * take 12 bytes per slot, where a HashMap of boxed keys and values takes several times as much, so the map can hold
+ * the ids of graphs with tens of millions of vertices.
+ *
+ * @author Zach Holland
+ */
+public class LongIntHashMap {
+    // The value returned for a missing key.
+    public static final int MISSING = -1;
+
+    // Marks an empty slot. Since it is also a valid key, that key is kept outside the slots.
+    private static final long EMPTY = 0;
+
+    // The keys and values of the slots. The number of slots is a power of two, at least twice the number of keys.
+    private long[] _keys;
+    private int[] _values;
+
+    // Whether the EMPTY key is in the map, and its value.
+    private boolean _hasEmptyKey;
+    private int _emptyKeyValue;
+
+    // The number of keys in the map.
+    private int _size;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expectedSize The number of keys the map can hold before it grows.
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2 * expectedSize, 8) - 1) << 1;
+        _keys = new long[capacity];
+        _values = new int[capacity];
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key The key.
+     * @return The value of the key, or MISSING if the key is not in the map.
+     */
+    public int get(long key) {
+        if (key == EMPTY) {
+            return _hasEmptyKey ? _emptyKeyValue : MISSING;
+        }
+        int mask = _keys.length - 1;
+        for (int slot = hash(key) & mask; _keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (_keys[slot] == key) {
+                return _values[slot];
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Adds a key with the given value, unless the key is already in the map.
+     *
+     * @param key   The key.
+     * @param value The value, which must not be MISSING.
+     * @return The value the key already had, or MISSING if it was added.
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key == EMPTY) {
+            if (_hasEmptyKey) {
+                return _emptyKeyValue;
+            }
+            _hasEmptyKey = true;
+            _emptyKeyValue = value;
+            _size++;
+            return MISSING;
+        }
+        int mask = _keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; _keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (_keys[slot] == key) {
+                return _values[slot];
+            }
+        }
+        _keys[slot] = key;
+        _values[slot] = value;
+        if (++_size > _keys.length / 2) {
+            grow();
+        }
+        return MISSING;
+    }
+
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Doubles the number of slots, and places every key again.
+     */
+    private void grow() {
+        long[] keys = _keys;
+        int[] values = _values;
+        _keys = new long[2 * keys.length];
+        _values = new int[_keys.length];
+        int mask = _keys.length - 1;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                int slot = hash(keys[i]) & mask;
+                while (_keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                _keys[slot] = keys[i];
+                _values[slot] = values[i];
+            }
+        }
+    }
+
+    /**
+     * Mixes the bits of a key, so that keys that differ only in their high bits, or that are consecutive, spread
+     * over the slots. This is the finalizer of MurmurHash3.
+     *
+     * @param key The key.
+     * @return The hash of the key.
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,91 @@
+package ubco.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes lines of numbers separated by spaces as ASCII, without going through strings, which would dominate the time
+ * to write large graphs. Write errors are thrown as UncheckedIOException, so that the writer can be used from the
+ * callbacks of a graph consumer; the caller unwraps them.
+ *
+ * @author Zach Holland
+ */
+public class NumberWriter implements AutoCloseable {
+    private final OutputStream _out;
+
+    // Holds the digits of a number, least significant first.
+    private final byte[] _digits = new byte[20];
+
+    /**
+     * Creates a writer that buffers its output.
+     *
+     * @param out The stream to write to. It is closed with the writer.
+     */
+    public NumberWriter(OutputStream out) {
+        _out = new BufferedOutputStream(out, 1 << 16);
+    }
+
+    public void writeLine(long a, long b) {
+        try {
+            writeNumber(a);
+            _out.write(' ');
+            writeNumber(b);
+            _out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void writeLine(long a, long b, long c) {
+        try {
+            writeNumber(a);
+            _out.write(' ');
+            writeNumber(b);
+            _out.write(' ');
+            writeNumber(c);
+            _out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes a comment line, which starts with '#'.
+     *
+     * @param comment The text of the comment, without line breaks.
+     */
+    public void writeComment(String comment) {
+        try {
+            _out.write(("# " + comment + "\n").getBytes(StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeNumber(long number) throws IOException {
+        if (number < 0) {
+            if (number == Long.MIN_VALUE) {
+                _out.write(Long.toString(number).getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            _out.write('-');
+            number = -number;
+        }
+        int length = 0;
+        do {
+            _digits[length++] = (byte) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        while (length > 0) {
+            _out.write(_digits[--length]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _out.close();
+    }
+}
@@ -0,0 +1,78 @@
+package ubco.utility;
+
+import ubco.algorithm.QtmMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures one run of a phase of the algorithm: its wall-clock time and the bytes allocated by the thread that runs
+ * it, which are added to the metrics of the run, and its Flight Recorder event.
+ *
+ * @author Zach Holland
+ * @see QtmMetrics
+ * @see FlightRecorderEvents
+ */
+public class PhaseTimer {
+    // Measures the bytes allocated by a thread, or null if the JVM cannot.
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationBean();
+
+    private final QtmMetrics.Phase _phase;
+    private final long _startNanos;
+    private final long _startBytes;
+
+    // The recording handle of the Flight Recorder event, or null.
+    private final Object _recording;
+
+    private PhaseTimer(QtmMetrics.Phase phase) {
+        _phase = phase;
+        _recording = FlightRecorderEvents.beginPhase();
+        _startBytes = allocatedBytes();
+        _startNanos = System.nanoTime();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        try {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean) {
+                com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) bean;
+                if (allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled()) {
+                    return allocations;
+                }
+            }
+        } catch (LinkageError | UnsupportedOperationException e) {
+            // Not a HotSpot JVM.
+        }
+        return null;
+    }
+
+    private static long allocatedBytes() {
+        return ALLOCATIONS != null ? ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    /**
+     * Starts measuring a phase on the current thread.
+     *
+     * @param phase The phase.
+     * @return The timer of the phase.
+     */
+    public static PhaseTimer start(QtmMetrics.Phase phase) {
+        return new PhaseTimer(phase);
+    }
+
+    /**
+     * Stops measuring the phase. It must be called on the thread that started it.
+     *
+     * @param metrics     The metrics to add the phase to, or null to only emit its event.
+     * @param vertexCount The number of vertices of the graph the phase worked on.
+     * @param edgeCount   The number of edges of the graph the phase worked on.
+     */
+    public void stop(QtmMetrics metrics, int vertexCount, long edgeCount) {
+        long nanos = System.nanoTime() - _startNanos;
+        long bytes = _startBytes >= 0 ? allocatedBytes() - _startBytes : -1;
+        if (metrics != null) {
+            metrics.addPhase(_phase, nanos, bytes);
+        }
+        FlightRecorderEvents.commitPhase(_recording, _phase.getLabel(), vertexCount, edgeCount);
+    }
+}
@@ -0,0 +1,26 @@
+package ubco.utility;
+
+/**
+ * Receives a graph generated by PlantedQtGraph, one vertex or edge at a time. Every vertex is received before any
+ * edge, and every edge is received once.
+ *
+ * @author Zach Holland
+ * @see PlantedQtGraph#write(PlantedGraphConsumer)
+ */
+public interface PlantedGraphConsumer {
+    /**
+     * Receives a vertex.
+     *
+     * @param v         The index of the vertex.
+     * @param community The planted community of the vertex: the index of the tree it was generated in.
+     */
+    void addVertex(int v, int community);
+
+    /**
+     * Receives an edge.
+     *
+     * @param u The index of one endpoint.
+     * @param v The index of the other endpoint.
+     */
+    void addEdge(int u, int v);
+}
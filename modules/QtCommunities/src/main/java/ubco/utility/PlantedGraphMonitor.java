@@ -0,0 +1,18 @@
+package ubco.utility;
+
+/**
+ * Follows the progress of a PlantedQtGraph write, and can stop it early. It is called from the thread that writes.
+ *
+ * @author Zach Holland
+ * @see PlantedQtGraph#setMonitor(PlantedGraphMonitor)
+ */
+public interface PlantedGraphMonitor {
+    /**
+     * Called every PlantedQtGraph.PROGRESS_INTERVAL vertices whose edges have been written, and after the last one.
+     *
+     * @param written The number of vertices whose edges have been written.
+     * @param total   The number of vertices of the graph.
+     * @return true to go on, and false to stop the write.
+     */
+    boolean verticesWritten(int written, int total);
+}
@@ -0,0 +1,337 @@
+package ubco.utility;
+
+import ubco.structure.Forest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+/**
+ * Generates graphs whose quasi-threshold structure is known, to test the QuasiThresholdMover at scale. A random
+ * forest is grown, its transitive closure is taken as a quasi-threshold graph, and then a fraction of the vertex
+ * pairs is flipped: every closure edge is deleted with the flip fraction as probability, and as many edges are
+ * inserted, in expectation, among the pairs that are not closure edges.
+ * <p>
+ * Each tree of the forest is a planted community. Undoing the flips gives back the closure, so the number of flips
+ * is an upper bound on the edits the graph needs to become quasi-threshold.
+ * <p>
+ * The closure is never built. The forest takes a few ints per vertex, and the edges are streamed straight from it,
+ * so graphs of hundreds of millions of edges can be written to a Gephi container or an edge list file.
+ *
+ * @author Zach Holland
+ */
+public class PlantedQtGraph {
+    // The defaults of the options.
+    public static final int COMMUNITY_SIZE = 100;
+    public static final int MAX_DEPTH = 8;
+    public static final double DEEPENING = 0.5;
+    public static final double FLIP_FRACTION = 0.1;
+
+    // The number of vertices written between two progress reports.
+    public static final int PROGRESS_INTERVAL = 1024;
+
+    // The number of vertices of the graph.
+    private final int _vertexCount;
+
+    // The number of trees of the forest.
+    private int _communityCount;
+
+    // The depth of the deepest vertex a tree may have, its root having depth 0.
+    private int _maxDepth = MAX_DEPTH;
+
+    // The probability that a vertex is a child of the vertex before it in preorder, rather than of a random ancestor.
+    private double _deepening = DEEPENING;
+
+    // The probability that a vertex pair is flipped.
+    private double _flipFraction = FLIP_FRACTION;
+
+    // The seed of the random generator. The same seed always generates the same graph.
+    private long _seed;
+
+    // Follows the progress of a write, or null.
+    private PlantedGraphMonitor _monitor;
+
+    // The community of each vertex, indexed by vertex index, from the last write.
+    private int[] _communities;
+
+    // The number of edges of the closure, and of the closure edges deleted and the edges inserted, from the last write.
+    private long _closureEdgeCount;
+    private long _deletedEdgeCount;
+    private long _insertedEdgeCount;
+
+    /**
+     * Creates a generator of graphs of the given number of vertices, with communities of COMMUNITY_SIZE vertices on
+     * average, and a random seed.
+     *
+     * @param vertexCount The number of vertices, at least 1.
+     */
+    public PlantedQtGraph(int vertexCount) {
+        if (vertexCount < 1) {
+            throw new IllegalArgumentException("The number of vertices must be at least 1.");
+        }
+        _vertexCount = vertexCount;
+        _communityCount = Math.max(1, vertexCount / COMMUNITY_SIZE);
+        _seed = new SplittableRandom().nextLong();
+    }
+
+    /**
+     * Sets the number of communities, which are the trees of the forest. Their sizes are drawn uniformly among the
+     * ways to split the vertices into that many trees.
+     *
+     * @param communityCount The number of communities, between 1 and the number of vertices.
+     */
+    public void setCommunityCount(int communityCount) {
+        if (communityCount < 1 || communityCount > _vertexCount) {
+            throw new IllegalArgumentException("The number of communities must be between 1 and the number of vertices.");
+        }
+        _communityCount = communityCount;
+    }
+
+    /**
+     * Sets the maximum depth of the trees. A vertex has as many closure edges to its ancestors as its depth.
+     *
+     * @param maxDepth The maximum depth, at least 1.
+     */
+    public void setMaxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("The maximum depth must be at least 1.");
+        }
+        _maxDepth = maxDepth;
+    }
+
+    /**
+     * Sets how deep the trees grow. The trees are grown in preorder: each vertex is a child of the vertex before it
+     * with this probability, and otherwise a child of one of its proper ancestors, chosen uniformly. Values close to
+     * 1 give paths that reach the maximum depth, and values close to 0 give shallow, bushy trees.
+     *
+     * @param deepening The probability, between 0 and 1.
+     */
+    public void setDeepening(double deepening) {
+        if (deepening < 0 || deepening > 1) {
+            throw new IllegalArgumentException("The deepening probability must be between 0 and 1.");
+        }
+        _deepening = deepening;
+    }
+
+    /**
+     * Sets the fraction of the closure edges that are deleted, which is also the expected number of inserted edges
+     * relative to the closure edges.
+     *
+     * @param flipFraction The fraction, between 0 and 1.
+     */
+    public void setFlipFraction(double flipFraction) {
+        if (flipFraction < 0 || flipFraction > 1) {
+            throw new IllegalArgumentException("The flip fraction must be between 0 and 1.");
+        }
+        _flipFraction = flipFraction;
+    }
+
+    public void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /**
+     * Sets the monitor that follows the progress of a write, and that can stop it early. A stopped write leaves the
+     * consumer with part of the edges.
+     *
+     * @param monitor The monitor, or null for none.
+     */
+    public void setMonitor(PlantedGraphMonitor monitor) {
+        _monitor = monitor;
+    }
+
+    /**
+     * Generates the graph and streams it into a consumer. The vertex indices are shuffled, so that they say nothing
+     * about the position of a vertex in its tree.
+     *
+     * @param consumer The consumer of the vertices and edges.
+     * @return true if the whole graph was written, false if the monitor stopped the write.
+     */
+    public boolean write(PlantedGraphConsumer consumer) {
+        int n = _vertexCount;
+        SplittableRandom random = new SplittableRandom(_seed);
+
+        // The vertex index of each position of the preorder.
+        int[] indices = new int[n];
+        for (int p = 0; p < n; p++) {
+            int q = random.nextInt(p + 1);
+            indices[p] = indices[q];
+            indices[q] = p;
+        }
+
+        // Grow the forest in preorder, keeping the path from the root of the current tree to the last vertex. The
+        // first vertex is a root, and the other roots are chosen by selection sampling, which gives exactly the
+        // requested number of trees.
+        int[] parents = new int[n];
+        int[] path = new int[_maxDepth + 1];
+        int pathLength = 0;
+        int community = -1;
+        int remainingRoots = _communityCount - 1;
+        long closureEdgeCount = 0;
+        _communities = new int[n];
+        for (int p = 0; p < n; p++) {
+            if (p == 0 || random.nextInt(n - p) < remainingRoots) {
+                if (p > 0) {
+                    remainingRoots--;
+                }
+                community++;
+                parents[p] = Forest.NONE;
+                path[0] = p;
+                pathLength = 1;
+            } else {
+                int level = pathLength == 1 || random.nextDouble() < _deepening
+                        ? pathLength - 1
+                        : random.nextInt(pathLength - 1);
+                level = Math.min(level, _maxDepth - 1);
+                parents[p] = path[level];
+                path[level + 1] = p;
+                pathLength = level + 2;
+                closureEdgeCount += level + 1;
+            }
+            _communities[indices[p]] = community;
+        }
+
+        // In preorder, the subtree of a vertex is the range of positions that starts at the vertex.
+        int[] subtreeSizes = new int[n];
+        for (int p = n - 1; p >= 0; p--) {
+            subtreeSizes[p]++;
+            if (parents[p] != Forest.NONE) {
+                subtreeSizes[parents[p]] += subtreeSizes[p];
+            }
+        }
+
+        // Every pair that is not a closure edge is inserted with the same probability, chosen so that the expected
+        // number of insertions matches the expected number of deletions.
+        double nonEdgeCount = (double) n * (n - 1) / 2 - closureEdgeCount;
+        double insertion = nonEdgeCount > 0 ? Math.min(1, _flipFraction * closureEdgeCount / nonEdgeCount) : 0;
+        double logNotInserted = Math.log1p(-insertion);
+
+        _closureEdgeCount = closureEdgeCount;
+        _deletedEdgeCount = 0;
+        _insertedEdgeCount = 0;
+
+        for (int v = 0; v < n; v++) {
+            consumer.addVertex(v, _communities[v]);
+        }
+
+        for (int p = 0; p < n; p++) {
+            // The closure edges of a vertex go to its ancestors.
+            for (int a = parents[p]; a != Forest.NONE; a = parents[a]) {
+                if (random.nextDouble() < _flipFraction) {
+                    _deletedEdgeCount++;
+                } else {
+                    consumer.addEdge(indices[a], indices[p]);
+                }
+            }
+
+            // The pairs that are not closure edges are those to the later positions outside the subtree. The gaps
+            // between insertions are drawn from a geometric distribution, so the pairs that are skipped cost nothing.
+            if (insertion > 0) {
+                double position = p + subtreeSizes[p] - 1;
+                while (true) {
+                    position += 1;
+                    if (insertion < 1) {
+                        position += Math.floor(Math.log(1 - random.nextDouble()) / logNotInserted);
+                    }
+                    if (position >= n) {
+                        break;
+                    }
+                    consumer.addEdge(indices[p], indices[(int) position]);
+                    _insertedEdgeCount++;
+                }
+            }
+
+            if (_monitor != null && ((p + 1) % PROGRESS_INTERVAL == 0 || p + 1 == n)) {
+                boolean goOn = _monitor.verticesWritten(p + 1, n);
+                if (!goOn && p + 1 < n) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Generates the graph into two text files. The edge list has one edge per line, as two vertex indices separated
+     * by a space. The community file starts with a comment line that gives the edit bound, followed by one line per
+     * vertex, with the vertex index and its community.
+     *
+     * @param edgeList    The file to write the edges into.
+     * @param communities The file to write the communities into.
+     * @return true if the whole graph was written, false if the monitor stopped the write.
+     * @throws IOException If a file cannot be written.
+     */
+    public boolean writeEdgeList(Path edgeList, Path communities) throws IOException {
+        boolean complete;
+        try (NumberWriter edges = new NumberWriter(Files.newOutputStream(edgeList))) {
+            complete = write(new PlantedGraphConsumer() {
+                @Override
+                public void addVertex(int v, int community) {
+                }
+
+                @Override
+                public void addEdge(int u, int v) {
+                    edges.writeLine(u, v);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (!complete) {
+            return false;
+        }
+
+        try (NumberWriter labels = new NumberWriter(Files.newOutputStream(communities))) {
+            labels.writeComment("At most " + getEditBound() + " edits to a quasi-threshold graph");
+            for (int v = 0; v < _vertexCount; v++) {
+                labels.writeLine(v, _communities[v]);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return true;
+    }
+
+    public int getVertexCount() {
+        return _vertexCount;
+    }
+
+    /**
+     * Returns the planted communities of the last graph written.
+     *
+     * @return The community of each vertex, indexed by vertex index, or null if no graph was written.
+     */
+    public int[] getCommunities() {
+        return _communities;
+    }
+
+    /**
+     * Returns the number of edges of the planted quasi-threshold graph of the last graph written, before the flips.
+     *
+     * @return The number of closure edges.
+     */
+    public long getClosureEdgeCount() {
+        return _closureEdgeCount;
+    }
+
+    /**
+     * Returns the number of edges of the last graph written.
+     *
+     * @return The number of edges.
+     */
+    public long getEdgeCount() {
+        return _closureEdgeCount - _deletedEdgeCount + _insertedEdgeCount;
+    }
+
+    /**
+     * Returns an upper bound on the number of edits the last graph written needs to become quasi-threshold: the
+     * number of flips, which take it back to the planted graph.
+     *
+     * @return The number of deleted and inserted edges.
+     */
+    public long getEditBound() {
+        return _deletedEdgeCount + _insertedEdgeCount;
+    }
+}
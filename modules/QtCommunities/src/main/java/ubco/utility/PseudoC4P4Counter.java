@@ -1,32 +1,85 @@
 package ubco.utility;
 
-import edu.uci.ics.jung.graph.Graph;
-import ubco.structure.Edge;
-import ubco.structure.Vertex;
+import ubco.structure.CsrGraph;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.BitSet;
 
 /**
  * Provides the ability to estimate the number of C4s and P4s that an edge participates in.
  * Used in conjunction with Triangle counter. If an edge has a high score, it is likely that
  * it should be deleted in the initialization portion of the algorithm.
+ * <p>
+ * The scores are those of the graph extended by a universal root vertex, which is adjacent to every other vertex
+ * and is represented by the index graph.getVertexCount(). The edges of the graph keep their ids, and the edge
+ * between the root and a vertex v has the id graph.getEdgeCount() + v.
  *
- * @param <V> The id type of the vertices.
  * @author Zach Holland
  */
-public class PseudoC4P4Counter<V extends Comparable<V>> {
-    private Graph<Vertex<V>, Edge<String>> _graph;
-    private Set<Edge<String>> _infinities;
+public class PseudoC4P4Counter {
+    private CsrGraph _graph;
+
+    // The score of each edge of the graph, indexed by edge id.
+    private int[] _scores;
+
+    // The ids of the edges whose score has been set to infinity, including the edges to the root.
+    private BitSet _infinities;
 
     /**
-     * Creates a new PseudoC4P4Counter object.
+     * Creates a new PseudoC4P4Counter object and computes the score of every edge.
      *
-     * @param graph The graph on which to estimate the C4s and P4s.
+     * @param graph     The graph on which to estimate the C4s and P4s.
+     * @param triangles The number of triangles of each edge, indexed by edge id.
      */
-    public PseudoC4P4Counter(Graph<Vertex<V>, Edge<String>> graph) {
+    public PseudoC4P4Counter(CsrGraph graph, int[] triangles) {
         _graph = graph;
-        _infinities = new HashSet<>();
+        _scores = new int[graph.getEdgeCount()];
+        _infinities = new BitSet(graph.getEdgeCount() + graph.getVertexCount());
+
+        for (int u = 0; u < graph.getVertexCount(); u++) {
+            for (int p = graph.adjacencyStart(u); p < graph.adjacencyEnd(u); p++) {
+                int v = graph.getNeighbor(p);
+                if (v > u) {
+                    // The root adds one to both degrees and to the triangle count, so these cancel out.
+                    int numTriangles = triangles[graph.getEdgeId(p)];
+                    _scores[graph.getEdgeId(p)] = (graph.degree(u) - 1 - numTriangles)
+                                                          * (graph.degree(v) - 1 - numTriangles);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the id of the edge between the given vertices, which may include the root.
+     *
+     * @param v1 The first vertex.
+     * @param v2 The second vertex.
+     * @return The id of the edge 'v1 v2', or -1 if they are not adjacent.
+     */
+    public int edgeId(int v1, int v2) {
+        int root = _graph.getVertexCount();
+        if (v1 == root) {
+            return v2 == root ? -1 : _graph.getEdgeCount() + v2;
+        }
+        if (v2 == root) {
+            return _graph.getEdgeCount() + v1;
+        }
+        return _graph.findEdgeId(v1, v2);
+    }
+
+    /**
+     * Returns the sum of the number of C4s in which the edge participates and the number of P4 in
+     * which the edge participates as central edge.
+     *
+     * @param edgeId The id of the edge, as returned by edgeId, or -1 for vertices that are not adjacent.
+     * @return The score of the edge.
+     */
+    public int score(int edgeId) {
+        if (edgeId < 0 || _infinities.get(edgeId)) {
+            // Vertices that are not adjacent are never worth keeping together.
+            return Integer.MAX_VALUE;
+        }
+        // Every neighbor of the other endpoint closes a triangle with the root, so no C4 or P4 remains.
+        return edgeId < _scores.length ? _scores[edgeId] : 0;
     }
 
     /**
@@ -38,12 +91,18 @@ public class PseudoC4P4Counter<V extends Comparable<V>> {
      * @return The sum of the number of C4s in which 'v1 v2' participates and the number of P4 in
      * which 'v1 v2' participates as central edge.
      */
-    public int score(Vertex<V> v1, Vertex<V> v2) {
-        Edge<String> edge = _graph.findEdge(v1, v2);
-        if (_infinities.contains(edge)) {
-            return Integer.MAX_VALUE;
-        } else {
-            return (_graph.degree(v1) - 1 - edge.getNumTriangles()) * (_graph.degree(v2) - 1 - edge.getNumTriangles());
+    public int score(int v1, int v2) {
+        return score(edgeId(v1, v2));
+    }
+
+    /**
+     * Set the score of the given edge to infinity.
+     *
+     * @param edgeId The id of the edge, as returned by edgeId. Vertices that are not adjacent are ignored.
+     */
+    public void setToInfinity(int edgeId) {
+        if (edgeId >= 0) {
+            _infinities.set(edgeId);
         }
     }
 
@@ -53,8 +112,7 @@ public class PseudoC4P4Counter<V extends Comparable<V>> {
      * @param v1 The first vertex.
      * @param v2 The second vertex.
      */
-    public void setToInfinity(Vertex<V> v1, Vertex<V> v2) {
-        Edge<String> edge = _graph.findEdge(v1, v2);
-        _infinities.add(edge);
+    public void setToInfinity(int v1, int v2) {
+        setToInfinity(edgeId(v1, v2));
     }
 }
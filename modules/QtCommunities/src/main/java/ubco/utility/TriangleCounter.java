@@ -1,13 +1,18 @@
 package ubco.utility;
 
 import edu.uci.ics.jung.graph.Graph;
+import ubco.algorithm.QtmMetrics;
+import ubco.structure.CsrGraph;
 import ubco.structure.Edge;
 import ubco.structure.Vertex;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.stream.Collectors;
 
 /**
@@ -105,4 +110,288 @@ public class TriangleCounter<T extends Comparable<T>> {
                                           }
                                       }));
     }
+
+    /**
+     * Counts the number of triangles that every edge of the given compressed graph participates in.
+     *
+     * @param graph The graph to count all of the triangles in.
+     * @return The number of triangles of each edge, indexed by edge id.
+     * @see #countAllTriangles(CsrGraph, int)
+     */
+    public static int[] countAllTriangles(CsrGraph graph) {
+        return countAllTriangles(graph, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Counts the number of triangles that every edge of the given compressed graph participates in, using the given
+     * number of threads.
+     * <p>
+     * Uses the same forward algorithm as the Graph version: the vertices are ranked by ascending degree, every edge
+     * is directed towards its endpoint of higher rank, and every triangle is found once by intersecting the forward
+     * neighborhoods of the endpoints of its lowest edge. The forward neighborhoods are sorted int arrays of ranks,
+     * intersected by merging, or by galloping search when one is much longer than the other.
+     * <p>
+     * With more than one thread, the vertices are split among the threads by a fork-join pool, and the counts are
+     * owner-computed: every edge belongs to its endpoint of lower rank, and only the task of a vertex writes the
+     * counts of its edges, so plain ints are enough. A triangle found from its lowest vertex also adds to the edge
+     * between the other two, which belongs to another vertex; that vertex finds the triangle again through the
+     * backward neighborhoods. The threads thus share twice the intersection work of a single thread.
+     *
+     * @param graph   The graph to count all of the triangles in.
+     * @param threads The number of threads, at least 1.
+     * @return The number of triangles of each edge, indexed by edge id.
+     */
+    public static int[] countAllTriangles(CsrGraph graph, int threads) {
+        return countAllTriangles(graph, threads, null);
+    }
+
+    /**
+     * Counts the number of triangles that every edge of the given compressed graph participates in, using the given
+     * number of threads, and adds the time it took to the given metrics.
+     *
+     * @param graph   The graph to count all of the triangles in.
+     * @param threads The number of threads, at least 1.
+     * @param metrics The metrics to add the triangle counting phase to, or null.
+     * @return The number of triangles of each edge, indexed by edge id.
+     * @see #countAllTriangles(CsrGraph, int)
+     */
+    public static int[] countAllTriangles(CsrGraph graph, int threads, QtmMetrics metrics) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1.");
+        }
+        PhaseTimer timer = PhaseTimer.start(QtmMetrics.Phase.TRIANGLE_COUNTING);
+        int n = graph.getVertexCount();
+
+        // Rank the vertices by ascending degree with a counting sort, breaking ties by index.
+        int maxDegree = 0;
+        for (int v = 0; v < n; v++) {
+            maxDegree = Math.max(maxDegree, graph.degree(v));
+        }
+        int[] degreeStart = new int[maxDegree + 2];
+        for (int v = 0; v < n; v++) {
+            degreeStart[graph.degree(v) + 1]++;
+        }
+        for (int d = 0; d <= maxDegree; d++) {
+            degreeStart[d + 1] += degreeStart[d];
+        }
+        int[] order = new int[n];
+        int[] rank = new int[n];
+        for (int v = 0; v < n; v++) {
+            int r = degreeStart[graph.degree(v)]++;
+            order[r] = v;
+            rank[v] = r;
+        }
+
+        // Build the forward neighborhoods. Visiting the targets in rank order leaves every neighborhood sorted.
+        int[] forwardOffsets = new int[n + 1];
+        for (int u = 0; u < n; u++) {
+            int count = 0;
+            for (int p = graph.adjacencyStart(u); p < graph.adjacencyEnd(u); p++) {
+                if (rank[graph.getNeighbor(p)] > rank[u]) {
+                    count++;
+                }
+            }
+            forwardOffsets[u + 1] = forwardOffsets[u] + count;
+        }
+        int[] forwardRanks = new int[forwardOffsets[n]];
+        int[] forwardEdgeIds = new int[forwardOffsets[n]];
+        int[] fill = Arrays.copyOf(forwardOffsets, n);
+        for (int r = 0; r < n; r++) {
+            int w = order[r];
+            for (int q = graph.adjacencyStart(w); q < graph.adjacencyEnd(w); q++) {
+                int u = graph.getNeighbor(q);
+                if (rank[u] < r) {
+                    forwardRanks[fill[u]] = r;
+                    forwardEdgeIds[fill[u]++] = graph.getEdgeId(q);
+                }
+            }
+        }
+
+        // Count the triangles of every edge.
+        int[] triangles = new int[graph.getEdgeCount()];
+        if (threads > 1) {
+            // The backward neighborhood of a vertex holds the forward positions that lead to it, in ascending order.
+            int[] backwardOffsets = new int[n + 1];
+            for (int k = 0; k < forwardRanks.length; k++) {
+                backwardOffsets[order[forwardRanks[k]] + 1]++;
+            }
+            for (int v = 0; v < n; v++) {
+                backwardOffsets[v + 1] += backwardOffsets[v];
+            }
+            int[] backwardPositions = new int[forwardRanks.length];
+            fill = Arrays.copyOf(backwardOffsets, n);
+            for (int k = 0; k < forwardRanks.length; k++) {
+                backwardPositions[fill[order[forwardRanks[k]]]++] = k;
+            }
+
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.invoke(new ForwardCounter(0, n, order, forwardOffsets, forwardRanks, forwardEdgeIds,
+                                               backwardOffsets, backwardPositions, triangles));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            new ForwardCounter(0, n, order, forwardOffsets, forwardRanks, forwardEdgeIds, null, null, triangles)
+                    .compute();
+        }
+        timer.stop(metrics, n, graph.getEdgeCount());
+        return triangles;
+    }
+
+    /**
+     * Finds the triangles of the forward edges leaving a range of vertices, splitting large ranges in half. Without
+     * backward neighborhoods, a counter adds every triangle it finds to all three of its edges, so it must be the
+     * only one. With them, it only writes the counts of the edges that leave its own range.
+     */
+    private static class ForwardCounter extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        // The number of vertices below which a range is no longer split.
+        private static final int SPLIT_THRESHOLD = 256;
+
+        // One forward neighborhood is galloped through when it is this many times longer than the other.
+        private static final int GALLOP_RATIO = 16;
+
+        private final int _from;
+        private final int _to;
+        private final int[] _order;
+        private final int[] _forwardOffsets;
+        private final int[] _forwardRanks;
+        private final int[] _forwardEdgeIds;
+
+        // The backward neighborhoods, or null if this counter is the only one.
+        private final int[] _backwardOffsets;
+        private final int[] _backwardPositions;
+
+        // The number of triangles of each edge, indexed by edge id.
+        private final int[] _counts;
+
+        ForwardCounter(int from, int to, int[] order, int[] forwardOffsets, int[] forwardRanks,
+                       int[] forwardEdgeIds, int[] backwardOffsets, int[] backwardPositions, int[] counts) {
+            _from = from;
+            _to = to;
+            _order = order;
+            _forwardOffsets = forwardOffsets;
+            _forwardRanks = forwardRanks;
+            _forwardEdgeIds = forwardEdgeIds;
+            _backwardOffsets = backwardOffsets;
+            _backwardPositions = backwardPositions;
+            _counts = counts;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > SPLIT_THRESHOLD) {
+                int middle = (_from + _to) >>> 1;
+                invokeAll(new ForwardCounter(_from, middle, _order, _forwardOffsets, _forwardRanks, _forwardEdgeIds,
+                                             _backwardOffsets, _backwardPositions, _counts),
+                          new ForwardCounter(middle, _to, _order, _forwardOffsets, _forwardRanks, _forwardEdgeIds,
+                                             _backwardOffsets, _backwardPositions, _counts));
+                return;
+            }
+            boolean shared = _backwardOffsets != null;
+            for (int u = _from; u < _to; u++) {
+                int uEnd = _forwardOffsets[u + 1];
+                for (int k = _forwardOffsets[u]; k < uEnd; k++) {
+                    int v = _order[_forwardRanks[k]];
+                    // The third vertex of a triangle of 'u v' follows v in the forward neighborhood of u. The edge
+                    // from v to it belongs to v when the counters are shared.
+                    int found = intersect(k + 1, uEnd, _forwardOffsets[v], _forwardOffsets[v + 1], true, !shared);
+                    _counts[_forwardEdgeIds[k]] += found;
+                }
+                if (shared) {
+                    // Find the triangles again from the lower vertices that lead to u, for the edges leaving u.
+                    for (int b = _backwardOffsets[u]; b < _backwardOffsets[u + 1]; b++) {
+                        int k = _backwardPositions[b];
+                        intersect(k + 1, _forwardOffsets[owner(k) + 1], _forwardOffsets[u], uEnd, false, true);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds the vertex whose forward neighborhood holds the given forward position.
+         *
+         * @param k The forward position.
+         * @return The vertex whose forward neighborhood holds k.
+         */
+        private int owner(int k) {
+            int low = 0;
+            int high = _forwardOffsets.length - 1;
+            while (high - low > 1) {
+                int middle = (low + high) >>> 1;
+                if (_forwardOffsets[middle] <= k) {
+                    low = middle;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Intersects two sorted ranges of forward ranks, adding a triangle to the edges that lead to each common
+         * vertex.
+         *
+         * @param i           The start of the first range.
+         * @param iEnd        The end of the first range.
+         * @param j           The start of the second range.
+         * @param jEnd        The end of the second range.
+         * @param countFirst  Whether to add the triangles to the edges of the first range.
+         * @param countSecond Whether to add the triangles to the edges of the second range.
+         * @return The number of common vertices.
+         */
+        private int intersect(int i, int iEnd, int j, int jEnd, boolean countFirst, boolean countSecond) {
+            int found = 0;
+            while (i < iEnd && j < jEnd) {
+                int a = _forwardRanks[i];
+                int b = _forwardRanks[j];
+                if (a < b) {
+                    i = (jEnd - j) * GALLOP_RATIO < iEnd - i ? gallop(i + 1, iEnd, b) : i + 1;
+                } else if (a > b) {
+                    j = (iEnd - i) * GALLOP_RATIO < jEnd - j ? gallop(j + 1, jEnd, a) : j + 1;
+                } else {
+                    if (countFirst) {
+                        _counts[_forwardEdgeIds[i]]++;
+                    }
+                    if (countSecond) {
+                        _counts[_forwardEdgeIds[j]]++;
+                    }
+                    i++;
+                    j++;
+                    found++;
+                }
+            }
+            return found;
+        }
+
+        /**
+         * Finds the first position of a sorted range of forward ranks that is not less than the key, by doubling
+         * the step and then searching the last step in halves.
+         *
+         * @param from The start of the range.
+         * @param to   The end of the range.
+         * @param key  The rank to look for.
+         * @return The first position holding a rank of at least key, or 'to' if there is none.
+         */
+        private int gallop(int from, int to, int key) {
+            int step = 1;
+            int low = from;
+            while (low + step < to && _forwardRanks[low + step - 1] < key) {
+                low += step;
+                step <<= 1;
+            }
+            int high = Math.min(low + step, to);
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (_forwardRanks[middle] < key) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
 }
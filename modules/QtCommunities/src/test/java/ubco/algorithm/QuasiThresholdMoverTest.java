@@ -0,0 +1,296 @@
+package ubco.algorithm;
+
+import org.junit.Test;
+import ubco.structure.CsrGraph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the QuasiThresholdMover against recounts and exhaustive searches on small random graphs.
+ *
+ * @author Zach Holland
+ */
+public class QuasiThresholdMoverTest {
+    // Stands for the universal root in the parent arrays of the tests.
+    private static final int ROOT = -1;
+
+    /**
+     * The core algorithm only visits the neighbors of the moved vertex and their ancestors. The position it finds
+     * must be as good as the best of every reinsertion, found by trying all of them, and the edit change it predicts
+     * must match a recount of the tree.
+     */
+    @Test
+    public void coreFindsTheBestPositionAndItsEditChange() {
+        for (long seed = 0; seed < 30; seed++) {
+            Random random = new Random(seed);
+            CsrGraph graph = randomGraph(6 + random.nextInt(5), 0.2 + 0.4 * random.nextDouble(), random);
+            QuasiThresholdMover<Integer> qtm = newMover(graph, seed);
+            qtm.setMaxIterations(0);
+            qtm.optimize(false);
+
+            for (int vm = 0; vm < graph.getVertexCount(); vm++) {
+                long editsBefore = countEdits(graph, getParents(qtm));
+                long bestEdits = bestReinsertion(graph, getParents(qtm), vm);
+                int editDelta = qtm.moveVertex(vm);
+                long editsAfter = countEdits(graph, getParents(qtm));
+
+                String where = "seed " + seed + ", vertex " + vm;
+                assertEquals(where, bestEdits, editsBefore + editDelta);
+                assertEquals(where, editsAfter, editsBefore + editDelta);
+                assertEquals(where, editsAfter, qtm.getEditCount());
+                assertEquals(where, editsAfter, qtm.countEdits());
+            }
+        }
+    }
+
+    /**
+     * The number of edits is tracked from the edit changes of the moves. The run must end with its best tree, and
+     * the tracked number of edits must match a recount of it.
+     */
+    @Test
+    public void trackedEditsMatchRecounts() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            CsrGraph graph = randomGraph(60, 0.1, random);
+            QuasiThresholdMover<Integer> qtm = newMover(graph, seed);
+            qtm.setMaxIterations(20);
+            qtm.optimize(false);
+
+            List<Long> iterationEdits = qtm.getIterationEditCounts();
+            assertEquals("seed " + seed, Collections.min(iterationEdits).longValue(), qtm.getEditCount());
+            assertEquals("seed " + seed, countEdits(graph, getParents(qtm)), qtm.getEditCount());
+        }
+    }
+
+    /**
+     * Moves found in parallel are applied one after the other, skipping those that conflict. Every thread count
+     * must leave a forest over all the vertices, with an exact number of edits.
+     */
+    @Test
+    public void parallelRunsLeaveValidForestsWithExactEdits() {
+        Random random = new Random(42);
+        CsrGraph graph = randomGraph(400, 0.03, random);
+        for (int threads : new int[]{1, 2, 4}) {
+            for (boolean annealing : new boolean[]{false, true}) {
+                QuasiThresholdMover<Integer> qtm = newMover(graph, 7);
+                qtm.setThreads(threads);
+                qtm.optimize(annealing);
+
+                String where = threads + " threads, annealing " + annealing;
+                int[] parents = getParents(qtm);
+                assertEquals(where, countEdits(graph, parents), qtm.getEditCount());
+                assertEquals(where, qtm.getEditCount(), qtm.countEdits());
+                assertTrue(where, qtm.getEditCount() < graph.getEdgeCount());
+            }
+        }
+    }
+
+    /**
+     * The worklist only examines the vertices near earlier moves, and a full sweep makes sideways moves. Either way,
+     * a converged run must end on a fixed point: a sweep over every vertex finds no move that saves edits.
+     */
+    @Test
+    public void worklistAndFullSweepConvergeOnFixedPoints() {
+        for (long seed = 0; seed < 10; seed++) {
+            Random random = new Random(seed);
+            CsrGraph graph = randomGraph(150, 0.05, random);
+            for (boolean worklist : new boolean[]{true, false}) {
+                QuasiThresholdMover<Integer> qtm = newMover(graph, seed);
+                qtm.setWorklist(worklist);
+                qtm.setMaxIterations(Integer.MAX_VALUE);
+                qtm.optimize(false);
+
+                long edits = qtm.getEditCount();
+                for (int vm = 0; vm < graph.getVertexCount(); vm++) {
+                    qtm.moveVertex(vm);
+                }
+                String where = "seed " + seed + ", worklist " + worklist;
+                assertEquals(where, edits, qtm.getEditCount());
+                assertEquals(where, edits, countEdits(graph, getParents(qtm)));
+            }
+        }
+    }
+
+    /**
+     * The moves of a batch are found against the same tree whether they are found in parallel or on one thread, and
+     * applied in the same order. So every thread count must give the same tree as one thread with the same batches,
+     * and about as few edits as finding the moves one at a time.
+     */
+    @Test
+    public void parallelBatchesMatchTheSequentialPath() {
+        CsrGraph graph = randomGraph(400, 0.03, new Random(5));
+        for (boolean annealing : new boolean[]{false, true}) {
+            QuasiThresholdMover<Integer> sequential = newMover(graph, 3);
+            sequential.optimize(annealing);
+            QuasiThresholdMover<Integer> oneThread = newMover(graph, 3);
+            oneThread.setBatchSize(64);
+            oneThread.optimize(annealing);
+            int[] expected = getParents(oneThread);
+
+            for (int threads : new int[]{2, 4}) {
+                QuasiThresholdMover<Integer> qtm = newMover(graph, 3);
+                qtm.setThreads(threads);
+                qtm.setBatchSize(64);
+                qtm.optimize(annealing);
+
+                String where = threads + " threads, annealing " + annealing;
+                assertArrayEquals(where, expected, getParents(qtm));
+                assertEquals(where, oneThread.getEditCount(), qtm.getEditCount());
+                assertEquals(where, oneThread.getIterationEditCounts(), qtm.getIterationEditCounts());
+                assertEquals(where, sequential.getEditCount(), qtm.getEditCount(), 0.05 * sequential.getEditCount());
+            }
+        }
+    }
+
+    /**
+     * Initializing the tree and then running iterations on it must give the same run as optimize, so that the
+     * iterations can be measured on their own.
+     */
+    @Test
+    public void runIterationsContinuesTheInitializedTree() {
+        CsrGraph graph = randomGraph(200, 0.05, new Random(8));
+        for (boolean annealing : new boolean[]{false, true}) {
+            QuasiThresholdMover<Integer> whole = newMover(graph, 4);
+            whole.optimize(annealing);
+            QuasiThresholdMover<Integer> split = newMover(graph, 4);
+            split.setMaxIterations(0);
+            split.optimize(annealing);
+            split.runIterations(QuasiThresholdMover.ITERATIONS, annealing);
+
+            String where = "annealing " + annealing;
+            assertArrayEquals(where, getParents(whole), getParents(split));
+            assertEquals(where, whole.getIterationEditCounts(), split.getIterationEditCounts());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void runIterationsNeedsATree() {
+        newMover(randomGraph(10, 0.5, new Random(1)), 1).runIterations(1, false);
+    }
+
+    private static QuasiThresholdMover<Integer> newMover(CsrGraph graph, long seed) {
+        List<Integer> ids = new ArrayList<>();
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            ids.add(v);
+        }
+        QuasiThresholdMover<Integer> qtm = new QuasiThresholdMover<>(graph, ids, ROOT);
+        qtm.setSeed(seed);
+        return qtm;
+    }
+
+    /**
+     * Generates a graph in which every vertex pair is an edge with the given probability.
+     */
+    private static CsrGraph randomGraph(int n, double p, Random random) {
+        List<int[]> edges = new ArrayList<>();
+        for (int u = 0; u < n; u++) {
+            for (int v = u + 1; v < n; v++) {
+                if (random.nextDouble() < p) {
+                    edges.add(new int[]{u, v});
+                }
+            }
+        }
+        int[] sources = new int[edges.size()];
+        int[] targets = new int[edges.size()];
+        for (int i = 0; i < edges.size(); i++) {
+            sources[i] = edges.get(i)[0];
+            targets[i] = edges.get(i)[1];
+        }
+        return CsrGraph.fromEdgeList(n, sources, targets, edges.size());
+    }
+
+    /**
+     * Reads the tree of a QuasiThresholdMover, checking that it is a forest over all the vertices.
+     *
+     * @return The parent of each vertex, or ROOT.
+     */
+    private static int[] getParents(QuasiThresholdMover<Integer> qtm) {
+        int[] parents = new int[qtm.getVertexCount()];
+        boolean[] visited = new boolean[qtm.getVertexCount()];
+        Arrays.fill(parents, ROOT);
+        qtm.writeQtGraph(false, new QtGraphConsumer<Integer>() {
+            @Override
+            public void addVertex(int v, Integer id) {
+                assertTrue("vertex " + v + " is visited twice", !visited[v]);
+                assertEquals(v, id.intValue());
+                visited[v] = true;
+            }
+
+            @Override
+            public void addEdge(int ancestor, int v) {
+                assertTrue("the parent of " + v + " comes after it", visited[ancestor]);
+                parents[v] = ancestor;
+            }
+        });
+        for (int v = 0; v < visited.length; v++) {
+            assertTrue("vertex " + v + " is not in the tree", visited[v]);
+        }
+        return parents;
+    }
+
+    /**
+     * Counts the edits of a tree from scratch: the ancestor pairs that are not edges, and the edges that are not
+     * ancestor pairs.
+     */
+    private static long countEdits(CsrGraph graph, int[] parents) {
+        long ancestorPairs = 0;
+        long keptEdges = 0;
+        for (int v = 0; v < parents.length; v++) {
+            int steps = 0;
+            for (int a = parents[v]; a != ROOT; a = parents[a]) {
+                assertTrue("the tree has a cycle", ++steps <= parents.length);
+                ancestorPairs++;
+                if (graph.isNeighbor(v, a)) {
+                    keptEdges++;
+                }
+            }
+        }
+        return ancestorPairs - keptEdges + graph.getEdgeCount() - keptEdges;
+    }
+
+    /**
+     * Finds the fewest edits of a reinsertion of a vertex by trying all of them. The vertex is removed, its children
+     * going to its parent, and is then inserted below any other vertex or the root, adopting any subset of the
+     * children there.
+     */
+    private static long bestReinsertion(CsrGraph graph, int[] parents, int vm) {
+        int[] removed = parents.clone();
+        for (int v = 0; v < removed.length; v++) {
+            if (removed[v] == vm) {
+                removed[v] = parents[vm];
+            }
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int newParent = ROOT; newParent < parents.length; newParent++) {
+            if (newParent == vm) {
+                continue;
+            }
+            List<Integer> children = new ArrayList<>();
+            for (int v = 0; v < removed.length; v++) {
+                if (v != vm && removed[v] == newParent) {
+                    children.add(v);
+                }
+            }
+            for (int subset = 0; subset < 1 << children.size(); subset++) {
+                int[] moved = removed.clone();
+                moved[vm] = newParent;
+                for (int i = 0; i < children.size(); i++) {
+                    if ((subset & 1 << i) != 0) {
+                        moved[children.get(i)] = vm;
+                    }
+                }
+                best = Math.min(best, countEdits(graph, moved));
+            }
+        }
+        return best;
+    }
+}
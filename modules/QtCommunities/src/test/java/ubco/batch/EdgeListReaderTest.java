@@ -0,0 +1,123 @@
+package ubco.batch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ubco.structure.CsrGraph;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the EdgeListReader parses a file the same way however it is split into chunks.
+ *
+ * @author Zach Holland
+ */
+public class EdgeListReaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * With chunks of a few bytes, most lines, comments and line endings are split between two chunks. Each of them
+     * must still be parsed once, by the chunk it starts in.
+     */
+    @Test
+    public void linesAcrossChunkBoundariesParseIdentically() throws IOException {
+        for (boolean denseIds : new boolean[]{true, false}) {
+            Path path = folder.newFile(denseIds ? "dense.txt" : "sparse.txt").toPath();
+            String text = randomEdgeList(new Random(denseIds ? 1 : 2), 300, denseIds);
+            Files.write(path, text.getBytes(StandardCharsets.US_ASCII));
+
+            EdgeListReader whole = new EdgeListReader(1);
+            whole.read(path, EdgeListReader.Format.TEXT);
+            for (int chunkSize = 8; chunkSize <= 200; chunkSize += 8) {
+                for (int threads : new int[]{1, 3}) {
+                    EdgeListReader chunked = new EdgeListReader(threads, chunkSize);
+                    chunked.read(path, EdgeListReader.Format.TEXT);
+
+                    String where = "chunks of " + chunkSize + " bytes, " + threads + " threads";
+                    assertArrayEquals(where, whole.getIds(), chunked.getIds());
+                    assertSameGraph(where, whole.getGraph(), chunked.getGraph());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void binaryChunksParseIdentically() throws IOException {
+        Path path = folder.newFile("graph.bin").toPath();
+        Random random = new Random(3);
+        byte[] bytes = new byte[8 * 500];
+        for (int i = 0; i < bytes.length; i += 4) {
+            int id = random.nextInt(100);
+            bytes[i] = (byte) id;
+        }
+        Files.write(path, bytes);
+
+        EdgeListReader whole = new EdgeListReader(1);
+        whole.read(path, EdgeListReader.Format.BINARY);
+        EdgeListReader chunked = new EdgeListReader(2, 24);
+        chunked.read(path, EdgeListReader.Format.BINARY);
+        assertArrayEquals(whole.getIds(), chunked.getIds());
+        assertSameGraph("binary", whole.getGraph(), chunked.getGraph());
+    }
+
+    @Test(expected = IOException.class)
+    public void negativeIdsAreRefused() throws IOException {
+        Path path = folder.newFile("negative.txt").toPath();
+        Files.write(path, "1 2\n-1 3\n".getBytes(StandardCharsets.US_ASCII));
+        new EdgeListReader(1).read(path, EdgeListReader.Format.TEXT);
+    }
+
+    /**
+     * Writes random edges with the variations the text format allows: spaces and tabs, weights after the ids,
+     * comments, empty lines and both line endings.
+     */
+    private static String randomEdgeList(Random random, int edgeCount, boolean denseIds) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < edgeCount; i++) {
+            switch (random.nextInt(8)) {
+                case 0:
+                    text.append("# a comment of some length\n");
+                    break;
+                case 1:
+                    text.append(random.nextBoolean() ? "\n" : "% another comment\r\n");
+                    break;
+                default:
+                    break;
+            }
+            String separator = random.nextBoolean() ? " " : "\t \t";
+            text.append(random.nextBoolean() ? "" : "  ")
+                .append(randomId(random, denseIds))
+                .append(separator)
+                .append(randomId(random, denseIds));
+            if (random.nextInt(4) == 0) {
+                text.append(' ').append(random.nextDouble());
+            }
+            text.append(random.nextBoolean() ? "\n" : "\r\n");
+        }
+        return text.toString();
+    }
+
+    private static long randomId(Random random, boolean denseIds) {
+        return denseIds ? random.nextInt(80) : 1_000_000_000_000L + random.nextInt(80) * 7_919_000_000L;
+    }
+
+    static void assertSameGraph(String where, CsrGraph expected, CsrGraph actual) {
+        assertEquals(where, expected.getVertexCount(), actual.getVertexCount());
+        assertEquals(where, expected.getEdgeCount(), actual.getEdgeCount());
+        for (int v = 0; v <= expected.getVertexCount(); v++) {
+            assertEquals(where, expected.adjacencyStart(v), actual.adjacencyStart(v));
+        }
+        for (int p = 0; p < 2 * expected.getEdgeCount(); p++) {
+            assertEquals(where, expected.getNeighbor(p), actual.getNeighbor(p));
+            assertEquals(where, expected.getEdgeId(p), actual.getEdgeId(p));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package ubco.batch;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ubco.structure.CsrGraph;
+import ubco.utility.TriangleCounter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a GraphSnapshot loads back exactly what was written.
+ *
+ * @author Zach Holland
+ */
+public class GraphSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void snapshotRoundTrips() throws IOException {
+        CsrGraph graph = randomGraph(new Random(1), 200, 1500);
+        long[] ids = new long[graph.getVertexCount()];
+        for (int v = 0; v < ids.length; v++) {
+            ids[v] = 3_000_000_000L + 7L * v;
+        }
+        int[] triangles = TriangleCounter.countAllTriangles(graph);
+        Path path = folder.newFile("graph.qtms").toPath();
+        new GraphSnapshot(graph, ids, triangles).write(path);
+
+        assertTrue(GraphSnapshot.isSnapshot(path));
+        GraphSnapshot loaded = GraphSnapshot.load(path);
+        EdgeListReaderTest.assertSameGraph("snapshot", graph, loaded.getGraph());
+        assertArrayEquals(ids, loaded.getIds());
+        assertArrayEquals(triangles, loaded.getTriangles());
+        assertArrayEquals(triangles, TriangleCounter.countAllTriangles(loaded.getGraph()));
+    }
+
+    @Test
+    public void snapshotWithoutTrianglesRoundTrips() throws IOException {
+        CsrGraph graph = randomGraph(new Random(2), 31, 77);
+        long[] ids = new long[graph.getVertexCount()];
+        for (int v = 0; v < ids.length; v++) {
+            ids[v] = v;
+        }
+        Path path = folder.newFile("graph.qtms").toPath();
+        new GraphSnapshot(graph, ids, null).write(path);
+
+        GraphSnapshot loaded = GraphSnapshot.load(path);
+        EdgeListReaderTest.assertSameGraph("snapshot", graph, loaded.getGraph());
+        assertArrayEquals(ids, loaded.getIds());
+        assertNull(loaded.getTriangles());
+    }
+
+    @Test(expected = IOException.class)
+    public void edgeListIsNotASnapshot() throws IOException {
+        Path path = folder.newFile("graph.txt").toPath();
+        Files.write(path, "0 1\n1 2\n2 0\n".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(GraphSnapshot.isSnapshot(path));
+        GraphSnapshot.load(path);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshotIsRefused() throws IOException {
+        CsrGraph graph = randomGraph(new Random(3), 50, 200);
+        Path path = folder.newFile("graph.qtms").toPath();
+        new GraphSnapshot(graph, new long[graph.getVertexCount()], null).write(path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+        GraphSnapshot.load(path);
+    }
+
+    private static CsrGraph randomGraph(Random random, int vertexCount, int edgeCount) {
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            sources[i] = random.nextInt(vertexCount);
+            targets[i] = random.nextInt(vertexCount);
+        }
+        return CsrGraph.fromEdgeList(vertexCount, sources, targets, edgeCount);
+    }
+}
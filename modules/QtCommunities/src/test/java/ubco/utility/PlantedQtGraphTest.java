@@ -0,0 +1,119 @@
+package ubco.utility;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that PlantedQtGraph plants the requested communities and flips the requested fraction of edges.
+ *
+ * @author Zach Holland
+ */
+public class PlantedQtGraphTest {
+
+    @Test
+    public void plantsTheRequestedCommunities() {
+        for (int communityCount : new int[]{1, 7, 40}) {
+            PlantedQtGraph generator = new PlantedQtGraph(2000);
+            generator.setCommunityCount(communityCount);
+            generator.setSeed(communityCount);
+            Set<Integer> communities = new HashSet<>();
+            generator.write(new PlantedGraphConsumer() {
+                @Override
+                public void addVertex(int v, int community) {
+                    communities.add(community);
+                }
+
+                @Override
+                public void addEdge(int u, int v) {
+                }
+            });
+
+            assertEquals(communityCount, communities.size());
+            for (int community : generator.getCommunities()) {
+                assertTrue(community >= 0 && community < communityCount);
+            }
+        }
+    }
+
+    /**
+     * The deleted and inserted edges are drawn at random, so their numbers only match the flip fraction of the
+     * closure edges in expectation. With thousands of closure edges, they stay well within a fifth of it.
+     */
+    @Test
+    public void flipsTheRequestedFractionOfEdges() {
+        for (double flipFraction : new double[]{0, 0.05, 0.2}) {
+            PlantedQtGraph generator = new PlantedQtGraph(3000);
+            generator.setCommunityCount(30);
+            generator.setFlipFraction(flipFraction);
+            generator.setSeed(11);
+            Set<Long> edges = new HashSet<>();
+            generator.write(new PlantedGraphConsumer() {
+                @Override
+                public void addVertex(int v, int community) {
+                }
+
+                @Override
+                public void addEdge(int u, int v) {
+                    assertTrue("self loop at " + u, u != v);
+                    assertTrue("edge " + u + " " + v + " is written twice",
+                               edges.add((long) Math.min(u, v) << 32 | Math.max(u, v)));
+                }
+            });
+
+            long closureEdges = generator.getClosureEdgeCount();
+            assertEquals(edges.size(), generator.getEdgeCount());
+            assertTrue(closureEdges > 1000);
+
+            // Every deleted edge lowers the edge count by one, and every inserted edge raises it by one.
+            long inserted = (generator.getEditBound() + generator.getEdgeCount() - closureEdges) / 2;
+            long deleted = generator.getEditBound() - inserted;
+            String where = "flip fraction " + flipFraction;
+            double expected = flipFraction * closureEdges;
+            assertEquals(where, expected, deleted, 0.2 * expected);
+            assertEquals(where, expected, inserted, 0.2 * expected);
+        }
+    }
+
+    @Test
+    public void monitorFollowsAndStopsTheWrite() {
+        int n = 5 * PlantedQtGraph.PROGRESS_INTERVAL;
+        PlantedQtGraph generator = new PlantedQtGraph(n);
+        generator.setSeed(3);
+        List<Integer> reports = new ArrayList<>();
+        generator.setMonitor((written, total) -> {
+            assertEquals(n, total);
+            reports.add(written);
+            return true;
+        });
+        CountingConsumer complete = new CountingConsumer();
+        assertTrue(generator.write(complete));
+        assertEquals(Arrays.asList(1024, 2048, 3072, 4096, 5120), reports);
+
+        CountingConsumer stopped = new CountingConsumer();
+        generator.setMonitor((written, total) -> written < 2 * PlantedQtGraph.PROGRESS_INTERVAL);
+        assertFalse(generator.write(stopped));
+        assertTrue(stopped._edgeCount < complete._edgeCount);
+    }
+
+    private static class CountingConsumer implements PlantedGraphConsumer {
+        private long _edgeCount;
+
+        @Override
+        public void addVertex(int v, int community) {
+        }
+
+        @Override
+        public void addEdge(int u, int v) {
+            _edgeCount++;
+        }
+    }
+}
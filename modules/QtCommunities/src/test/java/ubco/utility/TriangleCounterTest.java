@@ -0,0 +1,111 @@
+package ubco.utility;
+
+import org.junit.Test;
+import ubco.structure.CsrGraph;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * Checks the triangle counts of TriangleCounter against a brute-force count, on one thread and on several.
+ *
+ * @author Zach Holland
+ */
+public class TriangleCounterTest {
+    private static final int[] THREADS = {1, 2, 3, 8};
+
+    @Test
+    public void countsMatchBruteForceOnRandomGraphs() {
+        for (long seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            CsrGraph graph = randomGraph(600, 6000, random);
+            assertCounts("seed " + seed, graph);
+        }
+    }
+
+    /**
+     * A few hubs adjacent to most vertices, and a dense core that the other vertices attach to, make forward
+     * neighborhoods of very different lengths, so that many are intersected by galloping search.
+     */
+    @Test
+    public void countsMatchBruteForceOnSkewedDegreeGraphs() {
+        for (long seed = 0; seed < 5; seed++) {
+            Random random = new Random(seed);
+            int n = 800;
+            int core = 100;
+            int hubs = 4;
+            int[] sources = new int[n * (n - 1) / 2];
+            int[] targets = new int[n * (n - 1) / 2];
+            int edgeCount = 0;
+            for (int u = 0; u < n; u++) {
+                for (int v = u + 1; v < n; v++) {
+                    boolean edge = u < hubs ? random.nextInt(10) < 9
+                            : v < core ? random.nextInt(10) < 8
+                            : u < core ? random.nextInt(100) < 3
+                            : random.nextInt(1000) < 2;
+                    if (edge) {
+                        sources[edgeCount] = u;
+                        targets[edgeCount++] = v;
+                    }
+                }
+            }
+            CsrGraph graph = CsrGraph.fromEdgeList(n, sources, targets, edgeCount);
+            assertCounts("seed " + seed, graph);
+        }
+    }
+
+    @Test
+    public void graphsWithoutTrianglesHaveNone() {
+        // A star and a path.
+        int n = 500;
+        int[] sources = new int[2 * (n - 1)];
+        int[] targets = new int[2 * (n - 1)];
+        for (int v = 1; v < n; v++) {
+            sources[v - 1] = 0;
+            targets[v - 1] = v;
+            sources[n - 2 + v] = n + v - 1;
+            targets[n - 2 + v] = n + v;
+        }
+        assertCounts("star and path", CsrGraph.fromEdgeList(2 * n, sources, targets, sources.length));
+    }
+
+    private static void assertCounts(String where, CsrGraph graph) {
+        int[] expected = bruteForce(graph);
+        for (int threads : THREADS) {
+            assertArrayEquals(where + ", " + threads + " threads", expected,
+                              TriangleCounter.countAllTriangles(graph, threads));
+        }
+    }
+
+    /**
+     * Counts the triangles of every edge by testing every neighbor of one endpoint against the other endpoint.
+     */
+    private static int[] bruteForce(CsrGraph graph) {
+        int[] triangles = new int[graph.getEdgeCount()];
+        for (int u = 0; u < graph.getVertexCount(); u++) {
+            for (int p = graph.adjacencyStart(u); p < graph.adjacencyEnd(u); p++) {
+                int v = graph.getNeighbor(p);
+                if (v < u) {
+                    continue;
+                }
+                for (int q = graph.adjacencyStart(u); q < graph.adjacencyEnd(u); q++) {
+                    if (graph.isNeighbor(v, graph.getNeighbor(q))) {
+                        triangles[graph.getEdgeId(p)]++;
+                    }
+                }
+            }
+        }
+        return triangles;
+    }
+
+    private static CsrGraph randomGraph(int vertexCount, int edgeCount, Random random) {
+        int[] sources = new int[edgeCount];
+        int[] targets = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            sources[i] = random.nextInt(vertexCount);
+            targets[i] = random.nextInt(vertexCount);
+        }
+        return CsrGraph.fromEdgeList(vertexCount, sources, targets, edgeCount);
+    }
+}
@@ -0,0 +1,30 @@
+package ubco.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate of every benchmark is reported next to its
+ * throughput. It accepts the usual JMH command line options, for example:
+ * <pre>
+ * mvn -Pbenchmarks package
+ * java -jar modules/QtCommunitiesBenchmarks/target/benchmarks.jar QuasiThresholdMover -p edges=10000,100000
+ * </pre>
+ *
+ * @author Zach Holland
+ */
+public class Benchmarks {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
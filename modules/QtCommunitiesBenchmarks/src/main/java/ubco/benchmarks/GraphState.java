@@ -0,0 +1,51 @@
+package ubco.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import ubco.structure.CsrGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The input graph of a benchmark: a seeded synthetic graph of the given kind and number of edges, in the compressed
+ * form the algorithm works on. It is generated once per trial, outside of the measurements.
+ *
+ * @author Zach Holland
+ */
+@State(Scope.Benchmark)
+public class GraphState {
+    // The seed of every generated graph.
+    public static final long SEED = 42;
+
+    @Param({SyntheticGraphs.ERDOS_RENYI, SyntheticGraphs.POWER_LAW, SyntheticGraphs.PLANTED})
+    public String kind;
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int edges;
+
+    // The generated edge list.
+    public SyntheticGraphs edgeList;
+
+    // The compressed graph.
+    public CsrGraph graph;
+
+    // The id of every vertex, which is its index.
+    public List<Integer> ids;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        edgeList = SyntheticGraphs.generate(kind, edges, SEED);
+        graph = CsrGraph.fromEdgeList(edgeList.getVertexCount(),
+                edgeList.getSources(),
+                edgeList.getTargets(),
+                edgeList.getEdgeCount());
+        ids = new ArrayList<>(graph.getVertexCount());
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            ids.add(v);
+        }
+    }
+}
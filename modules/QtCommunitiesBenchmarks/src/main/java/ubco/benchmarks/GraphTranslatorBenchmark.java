@@ -0,0 +1,100 @@
+package ubco.benchmarks;
+
+import org.gephi.graph.api.Edge;
+import org.gephi.graph.api.GraphFactory;
+import org.gephi.graph.api.GraphModel;
+import org.gephi.graph.api.Node;
+import org.gephi.graph.api.UndirectedGraph;
+import org.gephi.io.importer.impl.ImportContainerImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ubco.algorithm.QuasiThresholdMover;
+import ubco.utility.GraphTranslator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the translation of a graph from Gephi into the algorithm, and of the result back into a Gephi container.
+ *
+ * @author Zach Holland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class GraphTranslatorBenchmark {
+
+    /**
+     * The input graph in a Gephi graph model.
+     */
+    @State(Scope.Benchmark)
+    public static class GephiState {
+        public UndirectedGraph gephiGraph;
+
+        @Setup(Level.Trial)
+        public void prepare(GraphState state) {
+            GraphModel model = GraphModel.Factory.newInstance();
+            GraphFactory factory = model.factory();
+            SyntheticGraphs edgeList = state.edgeList;
+
+            List<Node> nodes = new ArrayList<>(edgeList.getVertexCount());
+            for (int v = 0; v < edgeList.getVertexCount(); v++) {
+                nodes.add(factory.newNode(String.valueOf(v)));
+            }
+            List<Edge> edges = new ArrayList<>(edgeList.getEdgeCount());
+            for (int i = 0; i < edgeList.getEdgeCount(); i++) {
+                int source = edgeList.getSources()[i];
+                int target = edgeList.getTargets()[i];
+                if (source != target) {
+                    edges.add(factory.newEdge(nodes.get(source), nodes.get(target), false));
+                }
+            }
+            gephiGraph = model.getUndirectedGraph();
+            gephiGraph.addAllNodes(nodes);
+            gephiGraph.addAllEdges(edges);
+        }
+    }
+
+    /**
+     * An instance of the algorithm that has run on the input graph, and the view of its result to write.
+     */
+    @State(Scope.Benchmark)
+    public static class ResultState {
+        @Param({"false", "true"})
+        public boolean showTransitiveClosures;
+
+        public QuasiThresholdMover<Integer> optimized;
+
+        @Setup(Level.Trial)
+        public void prepare(GraphState state) {
+            optimized = new QuasiThresholdMover<>(state.graph, state.ids, -1);
+            optimized.setSeed(GraphState.SEED);
+            optimized.optimize(false);
+        }
+    }
+
+    @Benchmark
+    public QuasiThresholdMover<Integer> gephiToQuasiThresholdMover(GephiState state) {
+        return GraphTranslator.gephiToQuasiThresholdMover(state.gephiGraph);
+    }
+
+    @Benchmark
+    public ImportContainerImpl writeToContainer(ResultState state) {
+        ImportContainerImpl container = new ImportContainerImpl();
+        GraphTranslator.writeToContainer(container.getLoader(), state.optimized, state.showTransitiveClosures);
+        return container;
+    }
+}
@@ -0,0 +1,86 @@
+package ubco.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ubco.algorithm.QuasiThresholdMover;
+import ubco.utility.TriangleCounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the phases of the QuasiThresholdMover algorithm through optimize, by limiting the number of iterations.
+ * A run without iterations measures the initialization, and a single iteration is measured on its own from an
+ * initialized tree.
+ *
+ * @author Zach Holland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class QuasiThresholdMoverBenchmark {
+
+    /**
+     * An instance whose triangles are counted, shared by the instances a benchmark creates.
+     */
+    @State(Scope.Benchmark)
+    public static class MoverState {
+        public QuasiThresholdMover<Integer> template;
+
+        @Setup(Level.Trial)
+        public void prepare(GraphState state) {
+            template = new QuasiThresholdMover<>(state.graph, state.ids, -1);
+            template.setTriangles(TriangleCounter.countAllTriangles(state.graph));
+        }
+    }
+
+    /**
+     * An instance whose tree is initialized, and no vertex moved yet. A fresh one is prepared for every invocation,
+     * outside of the measurement, as a sweep changes the tree.
+     */
+    @State(Scope.Thread)
+    public static class InitializedState {
+        public QuasiThresholdMover<Integer> qtm;
+
+        @Setup(Level.Invocation)
+        public void prepare(MoverState state) {
+            qtm = new QuasiThresholdMover<>(state.template);
+            qtm.setSeed(GraphState.SEED);
+            qtm.setMaxIterations(0);
+            qtm.optimize(false);
+        }
+    }
+
+    @Benchmark
+    public long initialize(MoverState state) {
+        QuasiThresholdMover<Integer> qtm = new QuasiThresholdMover<>(state.template);
+        qtm.setSeed(GraphState.SEED);
+        qtm.setMaxIterations(0);
+        qtm.optimize(false);
+        return qtm.getEditCount();
+    }
+
+    @Benchmark
+    public long sweep(InitializedState state) {
+        state.qtm.runIterations(1, false);
+        return state.qtm.getEditCount();
+    }
+
+    @Benchmark
+    public long doQuasiThresholdMover(MoverState state) {
+        QuasiThresholdMover<Integer> qtm = new QuasiThresholdMover<>(state.template);
+        qtm.setSeed(GraphState.SEED);
+        // The skeleton keeps the result small. The transitive closure is measured by the GraphTranslator benchmark.
+        return qtm.doQuasiThresholdMover(false, false).getEdgeCount();
+    }
+}
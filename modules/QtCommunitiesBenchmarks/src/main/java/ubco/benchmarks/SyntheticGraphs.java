@@ -0,0 +1,147 @@
+package ubco.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Generates seeded random graphs as edge lists, so that every benchmark run sees the same inputs. The edge lists may
+ * hold a few self loops and parallel edges, which are dropped when the graph is compressed.
+ *
+ * @author Zach Holland
+ */
+public class SyntheticGraphs {
+    // The kinds of graphs that can be generated.
+    public static final String ERDOS_RENYI = "erdos-renyi";
+    public static final String POWER_LAW = "power-law";
+    public static final String PLANTED = "planted";
+
+    // The average degree of the generated graphs.
+    public static final int AVERAGE_DEGREE = 10;
+
+    // The exponent of the degree distribution of power-law graphs.
+    public static final double POWER_LAW_EXPONENT = 2.5;
+
+    // The size of the communities of planted graphs, and the fraction of their edges that stay inside one.
+    public static final int COMMUNITY_SIZE = 50;
+    public static final double INTRA_COMMUNITY_FRACTION = 0.8;
+
+    // The number of vertices of the graph.
+    private final int _vertexCount;
+
+    // The endpoints of every edge.
+    private final int[] _sources;
+    private final int[] _targets;
+
+    private SyntheticGraphs(int vertexCount, int edgeCount) {
+        _vertexCount = vertexCount;
+        _sources = new int[edgeCount];
+        _targets = new int[edgeCount];
+    }
+
+    /**
+     * Generates a graph of the given kind.
+     *
+     * @param kind      One of ERDOS_RENYI, POWER_LAW or PLANTED.
+     * @param edgeCount The number of edges to generate.
+     * @param seed      The seed of the random generator.
+     * @return The generated graph.
+     */
+    public static SyntheticGraphs generate(String kind, int edgeCount, long seed) {
+        int vertexCount = Math.max(2, 2 * edgeCount / AVERAGE_DEGREE);
+        SyntheticGraphs graph = new SyntheticGraphs(vertexCount, edgeCount);
+        SplittableRandom random = new SplittableRandom(seed);
+        switch (kind) {
+            case ERDOS_RENYI:
+                graph.fillErdosRenyi(random);
+                break;
+            case POWER_LAW:
+                graph.fillPowerLaw(random);
+                break;
+            case PLANTED:
+                graph.fillPlanted(random);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown graph kind: " + kind);
+        }
+        return graph;
+    }
+
+    /**
+     * Draws every edge uniformly among all vertex pairs.
+     *
+     * @param random The random generator.
+     */
+    private void fillErdosRenyi(SplittableRandom random) {
+        for (int i = 0; i < _sources.length; i++) {
+            _sources[i] = random.nextInt(_vertexCount);
+            _targets[i] = random.nextInt(_vertexCount);
+        }
+    }
+
+    /**
+     * Draws both endpoints of every edge with a probability proportional to a power-law weight, as in the
+     * Chung-Lu model.
+     *
+     * @param random The random generator.
+     */
+    private void fillPowerLaw(SplittableRandom random) {
+        double[] cumulativeWeights = new double[_vertexCount];
+        double total = 0;
+        for (int v = 0; v < _vertexCount; v++) {
+            total += Math.pow(v + 1, -1 / (POWER_LAW_EXPONENT - 1));
+            cumulativeWeights[v] = total;
+        }
+        for (int i = 0; i < _sources.length; i++) {
+            _sources[i] = pick(cumulativeWeights, random.nextDouble() * total);
+            _targets[i] = pick(cumulativeWeights, random.nextDouble() * total);
+        }
+    }
+
+    /**
+     * Draws most edges inside consecutive communities of COMMUNITY_SIZE vertices, and the others uniformly.
+     *
+     * @param random The random generator.
+     */
+    private void fillPlanted(SplittableRandom random) {
+        for (int i = 0; i < _sources.length; i++) {
+            int source = random.nextInt(_vertexCount);
+            int target;
+            if (random.nextDouble() < INTRA_COMMUNITY_FRACTION) {
+                int first = source - source % COMMUNITY_SIZE;
+                target = first + random.nextInt(Math.min(COMMUNITY_SIZE, _vertexCount - first));
+            } else {
+                target = random.nextInt(_vertexCount);
+            }
+            _sources[i] = source;
+            _targets[i] = target;
+        }
+    }
+
+    /**
+     * Finds the vertex whose range of cumulative weights holds the given value.
+     *
+     * @param cumulativeWeights The cumulative weight of every vertex, in vertex order.
+     * @param value             A value between 0 and the total weight.
+     * @return The vertex.
+     */
+    private static int pick(double[] cumulativeWeights, double value) {
+        int index = Arrays.binarySearch(cumulativeWeights, value);
+        return Math.min(index >= 0 ? index : -index - 1, cumulativeWeights.length - 1);
+    }
+
+    public int getVertexCount() {
+        return _vertexCount;
+    }
+
+    public int getEdgeCount() {
+        return _sources.length;
+    }
+
+    public int[] getSources() {
+        return _sources;
+    }
+
+    public int[] getTargets() {
+        return _targets;
+    }
+}
@@ -0,0 +1,30 @@
+package ubco.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ubco.utility.TriangleCounter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the triangle counting that precedes the initialization.
+ *
+ * @author Zach Holland
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx16g")
+public class TriangleCounterBenchmark {
+
+    @Benchmark
+    public int[] countAllTriangles(GraphState state) {
+        return TriangleCounter.countAllTriangles(state.graph);
+    }
+}